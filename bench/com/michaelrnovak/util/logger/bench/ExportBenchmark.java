@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.bench;
+
+import com.michaelrnovak.util.logger.service.LogEntry;
+import com.michaelrnovak.util.logger.service.LogExporter;
+import com.michaelrnovak.util.logger.service.LogFilter;
+import com.michaelrnovak.util.logger.service.TagTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Exporting the scrollback as UTF-8 text. With sink "null" the bytes go into a
+ * stream that throws them away, so it's the encoding and buffering being measured;
+ * with "file" they go to a temporary file like a real save. Besides the exporter on
+ * its own there's the exporter through gzip at the level the service uses for .gz
+ * names, and the way the export used to be written, a FileWriter taking line + "\n"
+ * per line. exportTag and baselineWriteLog save only one tag's lines: the exporter
+ * by tag id, and a copy of the old writeLog() loop that cut every line's tag out with
+ * substring() to compare (without the stray i++ that had it skip every other line).
+ * Scores are lines per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ExportBenchmark {
+	public static final int LINES = 16384;
+	public static final String TAG = "dalvikvm";
+	private static final OutputStream NULL = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+	@Param({ "24", "60", "160" })
+	public int medianLength;
+	@Param({ "null", "file" })
+	public String sink;
+	private List<LogEntry> mEntries;
+	private String[] mLines;
+	private LogFilter mLevel;
+	private int mTagId;
+	private File mFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		TagTable tags = new TagTable();
+		mLines = LogCorpus.lines(LINES, medianLength);
+		mEntries = LogCorpus.parse(mLines, tags);
+		mLevel = LogFilter.compile('I', null, null, LogFilter.PID_ALL, null, false, tags);
+		mTagId = tags.getId(TAG, false);
+		mFile = File.createTempFile("export", ".log");
+	}
+
+	@TearDown
+	public void tearDown() {
+		mFile.delete();
+	}
+
+	private OutputStream open() throws IOException {
+		return sink.equals("file") ? new FileOutputStream(mFile) : NULL;
+	}
+
+	private int export(LogFilter filter, int tagId) throws IOException {
+		OutputStream out = open();
+
+		try {
+			return new LogExporter().export(mEntries, filter, tagId, Channels.newChannel(out), null);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int exportAll() throws IOException {
+		return export(LogFilter.NONE, TagTable.NO_TAG);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int exportFiltered() throws IOException {
+		return export(mLevel, TagTable.NO_TAG);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int exportGzip() throws IOException {
+		GZIPOutputStream gzip = new GZIPOutputStream(open(), LogExporter.BUFFER_SIZE) {
+			{
+				def.setLevel(Deflater.BEST_SPEED);
+			}
+		};
+
+		try {
+			return new LogExporter().export(mEntries, LogFilter.NONE, TagTable.NO_TAG, Channels.newChannel(gzip), null);
+		} finally {
+			gzip.close();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int exportWriter() throws IOException {
+		Writer w = sink.equals("file") ? new FileWriter(mFile) : new OutputStreamWriter(NULL);
+
+		try {
+			for (int i = 0; i < mEntries.size(); i++) {
+				w.write(mEntries.get(i).line + "\n");
+			}
+		} finally {
+			w.close();
+		}
+
+		return mEntries.size();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int exportTag() throws IOException {
+		return export(LogFilter.NONE, mTagId);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int baselineWriteLog() throws IOException {
+		Writer w = sink.equals("file") ? new FileWriter(mFile) : new OutputStreamWriter(NULL);
+		String filterTag = TAG;
+		int written = 0;
+
+		try {
+			for (int i = 0; i < mLines.length; i++) {
+				String line = mLines[i];
+
+				if (!filterTag.equals("")) {
+					String tag = line.substring(2, line.indexOf("("));
+
+					if (filterTag.toLowerCase().equals(tag.toLowerCase().trim())) {
+						w.write(line + "\n");
+						written++;
+					}
+				} else {
+					w.write(line + "\n");
+					written++;
+				}
+			}
+		} finally {
+			w.close();
+		}
+
+		return written;
+	}
+}
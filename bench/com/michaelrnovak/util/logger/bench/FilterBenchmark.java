@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.bench;
+
+import com.michaelrnovak.util.logger.service.LogEntry;
+import com.michaelrnovak.util.logger.service.LogFilter;
+import com.michaelrnovak.util.logger.service.TagTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The filter on parsed entries, the check every line takes on its way to the UI and
+ * again on every refilter. baselineAddLine is the check the list adapter used to make
+ * on the raw line in addLine(): one exact level and one tag, the tag cut out and lower
+ * cased per line. It only knew those two, so it filters by level for "level", by tag
+ * for "include", and lets everything through otherwise. Scores are lines per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FilterBenchmark {
+	public static final int LINES = 16384;
+	@Param({ "none", "level", "include", "exclude", "message", "regex" })
+	public String filter;
+	private String[] mLines;
+	private LogEntry[] mEntries;
+	private LogFilter mFilter;
+	private char mBaselineLevel = 0;
+	private String mBaselineTag = "";
+
+	@Setup
+	public void setUp() {
+		TagTable tags = new TagTable();
+		mLines = LogCorpus.lines(LINES, 60);
+		List<LogEntry> entries = LogCorpus.parse(mLines, tags);
+		mEntries = entries.toArray(new LogEntry[entries.size()]);
+
+		if (filter.equals("level")) {
+			mFilter = LogFilter.compile('W', null, null, LogFilter.PID_ALL, null, false, tags);
+			mBaselineLevel = 'W';
+		} else if (filter.equals("include")) {
+			mFilter = LogFilter.compile(LogFilter.LEVEL_ALL, new String[] { "ActivityManager", "dalvikvm" }, null,
+					LogFilter.PID_ALL, null, false, tags);
+			mBaselineTag = "ActivityManager";
+		} else if (filter.equals("exclude")) {
+			mFilter = LogFilter.compile(LogFilter.LEVEL_ALL, null, new String[] { "WindowManager", "Tag9" },
+					LogFilter.PID_ALL, null, false, tags);
+		} else if (filter.equals("message")) {
+			mFilter = LogFilter.compile(LogFilter.LEVEL_ALL, null, null, LogFilter.PID_ALL, "wakelock", false, tags);
+		} else if (filter.equals("regex")) {
+			mFilter = LogFilter.compile(LogFilter.LEVEL_ALL, null, null, LogFilter.PID_ALL, "GC_\\w+ freed", true,
+					tags);
+		} else {
+			mFilter = LogFilter.NONE;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int matches() {
+		int matched = 0;
+
+		for (int i = 0; i < mEntries.length; i++) {
+			if (mFilter.matches(mEntries[i])) {
+				matched++;
+			}
+		}
+
+		return matched;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int baselineAddLine() {
+		int matched = 0;
+
+		for (int i = 0; i < mLines.length; i++) {
+			String line = mLines[i];
+
+			if (mBaselineLevel != 0 && line.charAt(0) != mBaselineLevel) {
+				continue;
+			}
+
+			if (!mBaselineTag.equals("")) {
+				String tag = line.substring(2, line.indexOf("("));
+
+				if (!mBaselineTag.toLowerCase().equals(tag.toLowerCase().trim())) {
+					continue;
+				}
+			}
+
+			matched++;
+		}
+
+		return matched;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.bench;
+
+import com.michaelrnovak.util.logger.service.LogEntry;
+import com.michaelrnovak.util.logger.service.LogFilter;
+import com.michaelrnovak.util.logger.service.LogPipeline;
+import com.michaelrnovak.util.logger.service.LogSink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The whole way from logcat text to a sink: read, parse, stats, repeat and rate
+ * checks, ring, store and search index when there is one, filter and delivery. The
+ * sink only counts, standing in for the UI batcher. Scores are lines per second.
+ *
+ * Every invocation gets a pipeline (and store) of its own. One kept for the trial
+ * remembers the lines it has read, so from the second invocation on it would take
+ * the same text for a replay, deliver nothing and time only the lookups. A run of
+ * 16k lines takes milliseconds, long enough for per-invocation setup not to skew
+ * the score, and each invocation has to deliver as many lines as the first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IngestBenchmark {
+	public static final int LINES = 16384;
+	@Param({ "false", "true" })
+	public boolean store;
+	@Param({ "none", "level" })
+	public String filter;
+	private byte[] mText;
+	private File mDir;
+	private LogPipeline mPipeline;
+	private LogPipeline.Input mInput;
+	private int mDelivered;
+	private int mExpected;
+
+	@Setup(Level.Trial)
+	public void setUpTrial() {
+		mText = LogCorpus.text(LogCorpus.lines(LINES, 60));
+		mExpected = -1;
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp() throws IOException {
+		mDelivered = 0;
+		mPipeline = new LogPipeline();
+
+		if (store) {
+			mDir = File.createTempFile("store", "");
+			mDir.delete();
+			mPipeline.openStore(mDir);
+		}
+
+		if (filter.equals("level")) {
+			mPipeline.setFilter(LogFilter.compile('I', null, null, LogFilter.PID_ALL, null, false,
+					mPipeline.getTags()), null);
+		}
+
+		mPipeline.replaceSink(null, new LogSink() {
+			public void publish(LogEntry entry) {
+				mDelivered++;
+			}
+
+			public void close() {
+			}
+		});
+
+		mInput = new LogPipeline.Input("main", 250, false);
+		ArrayList<LogPipeline.Input> inputs = new ArrayList<LogPipeline.Input>();
+		inputs.add(mInput);
+		mPipeline.setInputs(inputs);
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		mPipeline.close();
+
+		if (mDir != null) {
+			File[] files = mDir.listFiles();
+
+			for (int i = 0; files != null && i < files.length; i++) {
+				files[i].delete();
+			}
+
+			mDir.delete();
+			mDir = null;
+		}
+
+		if (mExpected < 0) {
+			mExpected = mDelivered;
+		}
+
+		if (mDelivered == 0 || mDelivered != mExpected) {
+			throw new IllegalStateException("Delivered " + mDelivered + " lines, expected " + mExpected);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int ingest() throws IOException {
+		mPipeline.read(mInput, new ByteArrayInputStream(mText));
+		return mDelivered;
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.bench;
+
+import com.michaelrnovak.util.logger.service.LogEntry;
+import com.michaelrnovak.util.logger.service.LogParser;
+import com.michaelrnovak.util.logger.service.TagTable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Synthetic logcat text shaped like a real device's. Message lengths are log-normal
+ * around the given median with a long tail (the odd stack trace line or dumped
+ * bundle runs into the kilobytes), a handful of tags do most of the talking, and most
+ * lines are D or I. The same seed always gives the same corpus so runs compare.
+ */
+public class LogCorpus {
+	public static final long SEED = 20100301;
+	private static final String[] COMMON_TAGS = { "ActivityManager", "dalvikvm", "WindowManager",
+			"PackageManager", "NetworkStateTracker", "GpsLocationProvider", "InputDevice", "AudioFlinger" };
+	private static final String[] WORDS = { "start", "proc", "for", "activity", "pid", "uid", "gids",
+			"GC_EXPLICIT", "freed", "objects", "bytes", "in", "ms", "Displayed", "intent", "null", "wakelock",
+			"acquire", "release", "timeout", "connection", "state", "changed", "to", "CONNECTED", "com.android" };
+	private static final int TAGS = 200;
+	private static final int PIDS = 40;
+
+	public static String[] lines(int count, int medianLength) {
+		Random random = new Random(SEED);
+		String[] lines = new String[count];
+		StringBuilder line = new StringBuilder();
+
+		for (int i = 0; i < count; i++) {
+			line.setLength(0);
+			line.append(level(random)).append('/').append(tag(random)).append('(');
+			String pid = Integer.toString(100 + random.nextInt(PIDS) * 37);
+
+			for (int j = pid.length(); j < 5; j++) {
+				line.append(' ');
+			}
+
+			line.append(pid).append("): ");
+			int length = (int) Math.round(medianLength * Math.exp(0.8 * random.nextGaussian()));
+			int end = line.length() + Math.max(1, Math.min(4000, length));
+
+			while (line.length() < end) {
+				line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+
+				if (random.nextInt(4) == 0) {
+					line.append(random.nextInt(100000)).append(' ');
+				}
+			}
+
+			line.setLength(end);
+			lines[i] = line.toString();
+		}
+
+		return lines;
+	}
+
+	/*
+	 * The lines as logcat would have written them.
+	 */
+	public static byte[] text(String[] lines) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try {
+			for (int i = 0; i < lines.length; i++) {
+				out.write(lines[i].getBytes("UTF-8"));
+				out.write('\n');
+			}
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+
+		return out.toByteArray();
+	}
+
+	public static List<LogEntry> parse(String[] lines, TagTable tags) {
+		LogParser parser = new LogParser(tags);
+		ArrayList<LogEntry> entries = new ArrayList<LogEntry>(lines.length);
+
+		for (int i = 0; i < lines.length; i++) {
+			entries.add(parser.parse(lines[i], i));
+		}
+
+		return entries;
+	}
+
+	private static char level(Random random) {
+		int r = random.nextInt(100);
+		return r < 10 ? 'V' : r < 55 ? 'D' : r < 85 ? 'I' : r < 95 ? 'W' : 'E';
+	}
+
+	// cubing the draw piles most lines onto the first few tags.
+	private static String tag(Random random) {
+		double r = random.nextDouble();
+		int i = (int) (TAGS * r * r * r);
+		return i < COMMON_TAGS.length ? COMMON_TAGS[i] : "Tag" + i;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.bench;
+
+import com.michaelrnovak.util.logger.service.LogParser;
+import com.michaelrnovak.util.logger.service.TagTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Reading lines off the logcat stream, and reading plus parsing them into entries
+ * (level, tag id, pid, message offsets). baselineTag is what every line used to cost
+ * once a tag filter was set: cutting the tag out with substring() and lower casing
+ * it to compare. Scores are lines per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ParseBenchmark {
+	public static final int LINES = 16384;
+	@Param({ "24", "60", "160" })
+	public int medianLength;
+	private String[] mLines;
+	private byte[] mText;
+	private LogParser mParser;
+
+	@Setup
+	public void setUp() {
+		mLines = LogCorpus.lines(LINES, medianLength);
+		mText = LogCorpus.text(mLines);
+		mParser = new LogParser(new TagTable());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void readLine(Blackhole bh) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(mText)));
+		String line;
+
+		while ((line = reader.readLine()) != null) {
+			bh.consume(line);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void parse(Blackhole bh) {
+		for (int i = 0; i < mLines.length; i++) {
+			bh.consume(mParser.parse(mLines[i], i));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void readLineAndParse(Blackhole bh) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(mText)));
+		String line;
+
+		for (int i = 0; (line = reader.readLine()) != null; i++) {
+			bh.consume(mParser.parse(line, i));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void baselineTag(Blackhole bh) {
+		for (int i = 0; i < mLines.length; i++) {
+			String line = mLines[i];
+			bh.consume(line.substring(2, line.indexOf("(")).toLowerCase().trim());
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.bench;
+
+import com.michaelrnovak.util.logger.service.LogEntry;
+import com.michaelrnovak.util.logger.service.LogParser;
+import com.michaelrnovak.util.logger.service.LogRingBuffer;
+import com.michaelrnovak.util.logger.service.SegmentStore;
+import com.michaelrnovak.util.logger.service.TagTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Appending to the scrollback: the in-memory ring, always full so every add evicts,
+ * and the on-disk segment store, which rotates its oldest segment out the same way.
+ * baselineVector is the scrollback as it used to be, a Vector of lines that does
+ * removeElementAt(0), shifting everything down, each time it's full. Scores are lines
+ * per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ScrollbackBenchmark {
+	public static final int LINES = 16384;
+	@Param({ "250", "4096" })
+	public int ringLines;
+	private LogEntry[] mEntries;
+	private LogRingBuffer<LogEntry> mRing;
+	private Vector<String> mVector;
+	private File mDir;
+	private SegmentStore mStore;
+
+	@Setup
+	public void setUp() throws IOException {
+		TagTable tags = new TagTable();
+		List<LogEntry> entries = LogCorpus.parse(LogCorpus.lines(LINES, 60), tags);
+		mEntries = entries.toArray(new LogEntry[entries.size()]);
+		mRing = new LogRingBuffer<LogEntry>(ringLines);
+
+		mVector = new Vector<String>();
+
+		for (int i = 0; i < ringLines; i++) {
+			mRing.add(mEntries[i % mEntries.length]);
+			mVector.add(mEntries[i % mEntries.length].line);
+		}
+
+		mDir = File.createTempFile("store", "");
+		mDir.delete();
+		mStore = new SegmentStore(mDir, SegmentStore.DEFAULT_SEGMENT_SIZE, SegmentStore.DEFAULT_MAX_SEGMENTS,
+				new LogParser(tags, false));
+	}
+
+	@TearDown
+	public void tearDown() {
+		mStore.close();
+		File[] files = mDir.listFiles();
+
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+
+		mDir.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long ringAppend() {
+		for (int i = 0; i < mEntries.length; i++) {
+			mRing.add(mEntries[i]);
+		}
+
+		return mRing.head();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long storeAppend() throws IOException {
+		long seq = 0;
+
+		for (int i = 0; i < mEntries.length; i++) {
+			seq = mStore.append(mEntries[i]);
+		}
+
+		return seq;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int baselineVector() {
+		for (int i = 0; i < mEntries.length; i++) {
+			if (mVector.size() == ringLines) {
+				mVector.removeElementAt(0);
+			}
+
+			mVector.add(mEntries[i].line);
+		}
+
+		return mVector.size();
+	}
+}
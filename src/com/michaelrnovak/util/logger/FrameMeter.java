@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger;
+
+import android.database.DataSetObserver;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.ViewTreeObserver;
+
+/*
+ * Rough frame timer for the log list. It's hooked up as a pre-draw listener and only
+ * times draws there was work for: the adapter's data changed since the last draw, or
+ * the list is being scrolled. After a change, the time is from the change to the
+ * draw that shows it, so a UI thread stuck for a second shows up as a one second
+ * frame; while scrolling, it's the gap between draws. With nothing pending the list
+ * just isn't drawing, and that isn't timed. Every REPORT_MS a summary goes to the
+ * log under its own tag, so a filter on the app's tag keeps it out of the list: how
+ * many frames, the median and worst one, and how many went over JANK_MS, i.e.
+ * missed at least one vsync. Only used in debuggable builds.
+ */
+public class FrameMeter implements ViewTreeObserver.OnPreDrawListener {
+    public static final String TAG = "FrameMeter";
+    public static final long JANK_MS = 33;
+    // frames longer than this all land in the last bucket; the worst is kept exactly.
+    public static final long BUCKET_MS = 250;
+    public static final long REPORT_MS = 5000;
+    private final int[] mBuckets = new int[(int) BUCKET_MS + 1];
+    private long mLast = 0;
+    private long mChanged = -1;
+    private boolean mScrolling = false;
+    private long mScrollStart = 0;
+    private long mReportAt = 0;
+    private int mFrames = 0;
+    private int mJanky = 0;
+    private long mMax = 0;
+
+    private final DataSetObserver mObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            changed();
+        }
+
+        @Override
+        public void onInvalidated() {
+            changed();
+        }
+    };
+
+    /*
+     * To register with the list's adapter, so the meter hears of every change.
+     */
+    public DataSetObserver getObserver() {
+        return mObserver;
+    }
+
+    /*
+     * Something new to draw. Only the first change before a draw counts.
+     */
+    public void changed() {
+        if (mChanged < 0) {
+            mChanged = SystemClock.uptimeMillis();
+        }
+    }
+
+    /*
+     * While the list scrolls every draw counts, the first one from when scrolling
+     * started.
+     */
+    public void setScrolling(boolean scrolling) {
+        if (scrolling && !mScrolling) {
+            mScrollStart = SystemClock.uptimeMillis();
+            changed();
+        }
+
+        mScrolling = scrolling;
+    }
+
+    public boolean onPreDraw() {
+        long now = SystemClock.uptimeMillis();
+
+        if (mScrolling && mLast >= mScrollStart) {
+            record(now - mLast);
+        } else if (mChanged >= 0) {
+            record(now - mChanged);
+        }
+
+        mLast = now;
+        mChanged = -1;
+
+        if (now >= mReportAt) {
+            report();
+            mReportAt = now + REPORT_MS;
+        }
+
+        return true;
+    }
+
+    private void record(long frame) {
+        mBuckets[(int) Math.min(frame, BUCKET_MS)]++;
+        mFrames++;
+        mMax = Math.max(mMax, frame);
+
+        if (frame > JANK_MS) {
+            mJanky++;
+        }
+    }
+
+    private void report() {
+        if (mFrames > 0) {
+            Log.d(TAG, "Frames: " + mFrames + ", median " + median() + " ms, worst " + mMax + " ms, "
+                    + mJanky + " over " + JANK_MS + " ms");
+        }
+
+        for (int i = 0; i < mBuckets.length; i++) {
+            mBuckets[i] = 0;
+        }
+
+        mFrames = 0;
+        mJanky = 0;
+        mMax = 0;
+    }
+
+    private int median() {
+        int seen = 0;
+
+        for (int i = 0; i < mBuckets.length; i++) {
+            seen += mBuckets[i];
+
+            if (seen * 2 >= mFrames) {
+                return i;
+            }
+        }
+
+        return mBuckets.length - 1;
+    }
+}
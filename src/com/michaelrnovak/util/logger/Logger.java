@@ -26,6 +26,8 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
 import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.AsyncTask;
@@ -44,6 +46,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewGroup.LayoutParams;
+import android.widget.AbsListView;
 import android.widget.BaseAdapter;
 import android.widget.EditText;
 import android.widget.LinearLayout;
@@ -52,12 +55,19 @@ import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.michaelrnovak.util.logger.service.ILogExportCallback;
 import com.michaelrnovak.util.logger.service.ILogProcessor;
+import com.michaelrnovak.util.logger.service.LogEntry;
+import com.michaelrnovak.util.logger.service.LogFilter;
 import com.michaelrnovak.util.logger.service.LogProcessor;
+import com.michaelrnovak.util.logger.service.MetricsSnapshot;
+import com.michaelrnovak.util.logger.service.SocketSink;
+import com.michaelrnovak.util.logger.service.StatsSnapshot;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.List;
 
 public class Logger extends ListActivity {
     private ILogProcessor mService;
@@ -66,10 +76,17 @@ public class Logger extends ListActivity {
     private LoggerListAdapter mAdapter;
     private LayoutInflater mInflater;
     private int mFilter = -1;
-    private int mBuffer = 0;
+    private boolean[] mBuffers = {true, false, false};
+    private boolean[] mPendingBuffers;
     private int mLogType = 0;
     private String mFilterTag = "";
+    private String[] mSeenTags;
+    private String mQuery = "";
+    private ArrayList<LogEntry> mResults = new ArrayList<LogEntry>();
+    private boolean mMoreResults = false;
+    private SearchTask mSearch;
     private boolean mServiceRunning = false;
+    private boolean mFollowTail = true;
     public int MAX_LINES = 250;
     public static final int DIALOG_FILTER_ID = 1;
     public static final int DIALOG_SAVE_ID = 2;
@@ -78,16 +95,43 @@ public class Logger extends ListActivity {
     public static final int DIALOG_BUFFER_ID = 5;
     public static final int DIALOG_TYPE_ID = 6;
     public static final int DIALOG_TAG_ID = 7;
+    public static final int DIALOG_TAG_LIST_ID = 8;
+    public static final int DIALOG_SEARCH_ID = 9;
+    public static final int DIALOG_SEARCH_RESULTS_ID = 10;
+    public static final int DIALOG_RATE_ID = 11;
+    public static final int DIALOG_OUTPUT_ID = 12;
+    public static final int DIALOG_TOP_ID = 13;
+    public static final int SEARCH_PAGE = 50;
     public static final int FILTER_OPTION = Menu.FIRST;
     public static final int EMAIL_OPTION = Menu.FIRST + 1;
     public static final int SAVE_OPTION = Menu.FIRST + 2;
     public static final int BUFFER_OPTION = Menu.FIRST + 3;
     public static final int TYPE_OPTION = Menu.FIRST + 4;
     public static final int TAG_OPTION = Menu.FIRST + 5;
-    final CharSequence[] items = {"Debug", "Error", "Info", "Verbose", "Warn", "All"};
-    final char[] mFilters = {'D', 'E', 'I', 'V', 'W'};
+    public static final int SEARCH_OPTION = Menu.FIRST + 6;
+    public static final int RATE_OPTION = Menu.FIRST + 7;
+    public static final int OUTPUT_OPTION = Menu.FIRST + 8;
+    public static final int TOP_OPTION = Menu.FIRST + 9;
+    public static final int METRICS_OPTION = Menu.FIRST + 10;
+    public static final int BACKGROUND_OPTION = Menu.FIRST + 11;
+    public static final long METRICS_INTERVAL = 1000;
+    public static final String OUTPUT_FILE = "/sdcard/logger/logger.log";
+    final CharSequence[] items = {"Verbose", "Debug", "Info", "Warn", "Error", "All"};
+    final char[] mFilters = {'V', 'D', 'I', 'W', 'E'};
     final CharSequence[] buffers = {"Main", "Radio", "Events"};
     final CharSequence[] types = {"Logcat", "Dmesg"};
+    final CharSequence[] rates = {"No limit", "10 lines/sec per tag", "50 lines/sec per tag", "200 lines/sec per tag"};
+    final int[] mRates = {0, 10, 50, 200};
+    private int mRate = 0;
+    final CharSequence[] outputs = {"Rotating file on SD card", "Local socket (adb forward)"};
+    private boolean[] mOutputs = {false, false};
+    private boolean[] mPendingOutputs;
+    final int[] mTopWindows = {1, 10, 60};
+    private int mTopWindow = 1;
+    private StatsSnapshot mTop;
+    private ArrayList<String> mExcludedTags = new ArrayList<String>();
+    private boolean mShowMetrics = false;
+    private FrameMeter mFrameMeter;
 	
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -95,20 +139,39 @@ public class Logger extends ListActivity {
         setContentView(R.layout.main);
 
         getListView().setStackFromBottom(true);
-        getListView().setTranscriptMode(ListView.TRANSCRIPT_MODE_NORMAL);
+        getListView().setTranscriptMode(ListView.TRANSCRIPT_MODE_DISABLED);
         getListView().setDividerHeight(0);
+        getListView().setOnScrollListener(mScrollListener);
 
         mAdapter = new LoggerListAdapter(this);
         setListAdapter(mAdapter);
+
+        if (isDebuggable()) {
+            mFrameMeter = new FrameMeter();
+            getListView().getViewTreeObserver().addOnPreDrawListener(mFrameMeter);
+            mAdapter.registerDataSetObserver(mFrameMeter.getObserver());
+        }
     }
     
+    /*
+     * Goes through the package manager since getApplicationInfo() is missing on Cupcake.
+     */
+    private boolean isDebuggable() {
+        try {
+            ApplicationInfo info = getPackageManager().getApplicationInfo(getPackageName(), 0);
+            return (info.flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        } catch (PackageManager.NameNotFoundException e) {
+            return false;
+        }
+    }
+
     @Override
     public void onResume() {
         super.onResume();
         bindService(new Intent(this, LogProcessor.class), mConnection, Context.BIND_AUTO_CREATE);
 
         //TODO: make sure this actually deletes and doesn't append.
-        File f = new File("/sdcard/tmp.log");
+        File f = new File("/sdcard/" + LogProcessor.ATTACHMENT_FILE);
         if (f.exists()) {
             f.deleteOnExit();
         }
@@ -118,6 +181,7 @@ public class Logger extends ListActivity {
     @Override
     public void onPause() {
         super.onPause();
+        mHandler.removeCallbacks(mMetricsUpdater);
         unbindService(mConnection);
     }
     
@@ -125,18 +189,20 @@ public class Logger extends ListActivity {
     public boolean onPrepareOptionsMenu(Menu menu) {
         MenuItem item = menu.getItem(0);
 
-        if (mBuffer != 0) {
+        if (!mBuffers[0]) {
             item.setEnabled(false);
         } else {
             item.setEnabled(true);
         }
 
+        menu.findItem(BACKGROUND_OPTION).setTitle(isBackground() ? "Stop Background" : "Keep Capturing");
+
         return super.onPrepareOptionsMenu(menu);
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
-        if (mBuffer == 0) {
+        if (mBuffers[0]) {
             menu.add(Menu.NONE, FILTER_OPTION, 1, "Filter Log").setIcon(R.drawable.ic_menu_filter);
         } else {
             menu.add(Menu.NONE, FILTER_OPTION, 1, "Filter Log").setIcon(R.drawable.ic_menu_filter).setEnabled(false);
@@ -147,6 +213,12 @@ public class Logger extends ListActivity {
         menu.add(Menu.NONE, EMAIL_OPTION, 4, "Email Log").setIcon(android.R.drawable.ic_menu_send);
         menu.add(Menu.NONE, SAVE_OPTION, 5, "Save Log").setIcon(android.R.drawable.ic_menu_save);
         menu.add(Menu.NONE, TYPE_OPTION, 6, "Select Log").setIcon(R.drawable.ic_menu_monitor);
+        menu.add(Menu.NONE, SEARCH_OPTION, 7, "Search Log").setIcon(android.R.drawable.ic_menu_search);
+        menu.add(Menu.NONE, RATE_OPTION, 8, "Rate Limit").setIcon(android.R.drawable.ic_menu_recent_history);
+        menu.add(Menu.NONE, OUTPUT_OPTION, 9, "Stream Log").setIcon(android.R.drawable.ic_menu_upload);
+        menu.add(Menu.NONE, TOP_OPTION, 10, "Top Talkers").setIcon(android.R.drawable.ic_menu_sort_by_size);
+        menu.add(Menu.NONE, METRICS_OPTION, 11, "Metrics").setIcon(android.R.drawable.ic_menu_info_details);
+        menu.add(Menu.NONE, BACKGROUND_OPTION, 12, "Keep Capturing").setIcon(android.R.drawable.ic_menu_recent_history);
 
         return super.onCreateOptionsMenu(menu);
     }
@@ -172,6 +244,38 @@ public class Logger extends ListActivity {
         case TAG_OPTION:
             onCreateDialog(DIALOG_TAG_ID);
             break;
+        case SEARCH_OPTION:
+            onCreateDialog(DIALOG_SEARCH_ID);
+            break;
+        case RATE_OPTION:
+            onCreateDialog(DIALOG_RATE_ID);
+            break;
+        case OUTPUT_OPTION:
+            onCreateDialog(DIALOG_OUTPUT_ID);
+            break;
+        case TOP_OPTION:
+            onCreateDialog(DIALOG_TOP_ID);
+            break;
+        case BACKGROUND_OPTION:
+            boolean background = !isBackground();
+
+            try {
+                mService.setBackground(background);
+                Toast.makeText(this, background ? "Logging will carry on while Logger is closed."
+                        : "Logging stops when Logger is closed.", Toast.LENGTH_SHORT).show();
+            } catch (RemoteException e) {
+                Log.e("Logger", "Service is gone...");
+            }
+            break;
+        case METRICS_OPTION:
+            mShowMetrics = !mShowMetrics;
+            findViewById(R.id.metrics).setVisibility(mShowMetrics ? View.VISIBLE : View.GONE);
+            mHandler.removeCallbacks(mMetricsUpdater);
+
+            if (mShowMetrics) {
+                mMetricsUpdater.run();
+            }
+            break;
         default:
             break;
         }
@@ -184,7 +288,7 @@ public class Logger extends ListActivity {
 
         switch (id) {
         case DIALOG_FILTER_ID:
-            builder.setTitle("Select a filter level");
+            builder.setTitle("Select a minimum level");
             builder.setSingleChoiceItems(items, mFilter, mClickListener);
             mDialog = builder.create();
             break;
@@ -198,14 +302,39 @@ public class Logger extends ListActivity {
             mDialog = builder.create();
             break;
         case DIALOG_SAVE_PROGRESS_ID:
-            mProgressDialog = ProgressDialog.show(this, "", "Saving...", true);
+            mProgressDialog = showExportProgress("Saving...");
             return mProgressDialog;
         case DIALOG_EMAIL_ID:
-            mProgressDialog = ProgressDialog.show(this, "", "Generating attachment...", true);
+            mProgressDialog = showExportProgress("Generating attachment...");
             return mProgressDialog;
         case DIALOG_BUFFER_ID:
-            builder.setTitle("Select a buffer");
-            builder.setSingleChoiceItems(buffers, mBuffer, mBufferListener);
+            builder.setTitle("Select buffers");
+            mPendingBuffers = (boolean[]) mBuffers.clone();
+            builder.setMultiChoiceItems(buffers, mPendingBuffers, mBufferChoiceListener);
+            builder.setPositiveButton("Show", mBufferListener);
+            mDialog = builder.create();
+            break;
+        case DIALOG_RATE_ID:
+            builder.setTitle("Limit chatty tags to");
+            builder.setSingleChoiceItems(rates, mRate, mRateListener);
+            mDialog = builder.create();
+            break;
+        case DIALOG_OUTPUT_ID:
+            builder.setTitle("Also stream the log to");
+            mPendingOutputs = (boolean[]) mOutputs.clone();
+            builder.setMultiChoiceItems(outputs, mPendingOutputs, mOutputChoiceListener);
+            builder.setPositiveButton("Apply", mOutputListener);
+            mDialog = builder.create();
+            break;
+        case DIALOG_TOP_ID:
+            builder.setTitle("Top talkers, last " + mTopWindows[mTopWindow] + "s");
+            builder.setItems(getTopTalkers(), mTopListener);
+            builder.setNeutralButton("Last " + mTopWindows[(mTopWindow + 1) % mTopWindows.length] + "s", mTopListener);
+
+            if (mExcludedTags.size() > 0) {
+                builder.setNegativeButton("Show Hidden", mTopListener);
+            }
+
             mDialog = builder.create();
             break;
         case DIALOG_TYPE_ID:
@@ -221,9 +350,47 @@ public class Logger extends ListActivity {
             et.setText(mFilterTag);
             builder.setView(t);
             builder.setNegativeButton("Clear Filter", mTagListener);
+            builder.setNeutralButton("Seen Tags", mTagListener);
             builder.setPositiveButton("Filter", mTagListener);
             mDialog = builder.create();
             break;
+        case DIALOG_TAG_LIST_ID:
+            builder.setTitle("Select a tag");
+            builder.setItems(getSeenTags(), mTagListListener);
+            mDialog = builder.create();
+            break;
+        case DIALOG_SEARCH_ID:
+            builder.setTitle("Search for");
+            LayoutInflater searchInflater = (LayoutInflater) getSystemService(LAYOUT_INFLATER_SERVICE);
+            View q = searchInflater.inflate(R.layout.file_save, (ViewGroup) findViewById(R.id.layout_root));
+            EditText query = (EditText) q.findViewById(R.id.filename);
+            query.setText(mQuery);
+            builder.setView(q);
+            builder.setNegativeButton("Cancel", mSearchListener);
+            builder.setPositiveButton("Search", mSearchListener);
+            mDialog = builder.create();
+            break;
+        case DIALOG_SEARCH_RESULTS_ID:
+            CharSequence[] results = new CharSequence[mResults.size()];
+
+            for (int i = 0; i < results.length; i++) {
+                results[i] = mResults.get(i).line;
+            }
+
+            if (results.length == 0) {
+                builder.setTitle("No matches");
+            } else {
+                builder.setTitle(results.length + (mMoreResults ? "+" : "") + " matches for \"" + mQuery + "\"");
+                builder.setItems(results, null);
+            }
+
+            if (mMoreResults) {
+                builder.setNeutralButton("More", mResultsListener);
+            }
+
+            builder.setPositiveButton("Close", mResultsListener);
+            mDialog = builder.create();
+            break;
         default:
             break;
         }
@@ -244,20 +411,142 @@ public class Logger extends ListActivity {
         }
     };
 
+    DialogInterface.OnMultiChoiceClickListener mBufferChoiceListener = new DialogInterface.OnMultiChoiceClickListener() {
+        public void onClick(DialogInterface dialog, int which, boolean checked) {
+            mPendingBuffers[which] = checked;
+        }
+    };
+
     DialogInterface.OnClickListener mBufferListener = new DialogInterface.OnClickListener() {
         public void onClick(DialogInterface dialog, int which) {
-            mBuffer = which;
+            boolean any = false;
+
+            for (int i = 0; i < mPendingBuffers.length; i++) {
+                any |= mPendingBuffers[i];
+            }
+
+            if (!any || Arrays.equals(mPendingBuffers, mBuffers)) {
+                mDialog.dismiss();
+                return;
+            }
+
+            mBuffers = mPendingBuffers;
             updateBuffer();
         }
     };
 
     DialogInterface.OnClickListener mTypeListener = new DialogInterface.OnClickListener() {
         public void onClick(DialogInterface dialog, int which) {
+            if (which == mLogType) {
+                mDialog.dismiss();
+                return;
+            }
+
             mLogType = which;
             updateLog();
         }
     };
 
+    /*
+     * A tag may log a one second burst at its limit before it gets cut off.
+     */
+    DialogInterface.OnClickListener mRateListener = new DialogInterface.OnClickListener() {
+        public void onClick(DialogInterface dialog, int which) {
+            mRate = which;
+
+            try {
+                mService.setRateLimit(mRates[which], mRates[which]);
+            } catch (RemoteException e) {
+                Log.e("Logger", "Service is gone...");
+            }
+
+            mDialog.dismiss();
+        }
+    };
+
+    DialogInterface.OnMultiChoiceClickListener mOutputChoiceListener = new DialogInterface.OnMultiChoiceClickListener() {
+        public void onClick(DialogInterface dialog, int which, boolean checked) {
+            mPendingOutputs[which] = checked;
+        }
+    };
+
+    DialogInterface.OnClickListener mOutputListener = new DialogInterface.OnClickListener() {
+        public void onClick(DialogInterface dialog, int which) {
+            mOutputs = mPendingOutputs;
+
+            try {
+                applyOutputs();
+            } catch (RemoteException e) {
+                Log.e("Logger", "Service is gone...");
+            }
+
+            if (mOutputs[1]) {
+                Toast.makeText(Logger.this, "Run \"adb forward tcp:5039 localabstract:" + SocketSink.DEFAULT_NAME
+                        + "\" and connect to port 5039", Toast.LENGTH_LONG).show();
+            }
+
+            mDialog.dismiss();
+        }
+    };
+
+    private void applyOutputs() throws RemoteException {
+        mService.setFileOutput(mOutputs[0] ? OUTPUT_FILE : null);
+        mService.setSocketOutput(mOutputs[1] ? SocketSink.DEFAULT_NAME : null);
+    }
+
+    /*
+     * Tapping a tag hides it, the other buttons switch the window or bring back
+     * everything hidden.
+     */
+    DialogInterface.OnClickListener mTopListener = new DialogInterface.OnClickListener() {
+        public void onClick(DialogInterface dialog, int which) {
+            if (which == -3) {
+                mTopWindow = (mTopWindow + 1) % mTopWindows.length;
+                mDialog.dismiss();
+                onCreateDialog(DIALOG_TOP_ID);
+                return;
+            }
+
+            if (which == -2) {
+                mExcludedTags.clear();
+            } else if (which >= 0 && which < mTop.tags.length && !mExcludedTags.contains(mTop.tags[which])) {
+                mExcludedTags.add(mTop.tags[which]);
+            }
+
+            try {
+                applyFilter();
+            } catch (RemoteException e) {
+                Log.e("Logger", "Service is gone...");
+            }
+
+            mDialog.dismiss();
+        }
+    };
+
+    /*
+     * One "tag: lines, KB" row per busy tag, busiest first, with a summary row for the
+     * whole log that isn't clickable in any useful way.
+     */
+    private CharSequence[] getTopTalkers() {
+        try {
+            mTop = mService.getStats(mTopWindows[mTopWindow]);
+        } catch (RemoteException e) {
+            Log.e("Logger", "Service is gone...");
+            return new CharSequence[0];
+        }
+
+        CharSequence[] rows = new CharSequence[mTop.tags.length + 1];
+
+        for (int i = 0; i < mTop.tags.length; i++) {
+            rows[i] = mTop.tags[i] + ": " + mTop.tagLines[i] + " lines, " + (mTop.tagBytes[i] + 1023) / 1024 + " KB";
+        }
+
+        rows[mTop.tags.length] = "All: " + mTop.lines + " lines, " + (mTop.bytes + 1023) / 1024 + " KB ("
+                + mTop.levelLines[LogFilter.priority('E')] + " errors, "
+                + mTop.levelLines[LogFilter.priority('W')] + " warnings)";
+        return rows;
+    }
+
     DialogInterface.OnClickListener mButtonListener = new DialogInterface.OnClickListener() {
         public void onClick(DialogInterface dialog, int which) {
             if (which == -1) {
@@ -266,7 +555,7 @@ public class Logger extends ListActivity {
                 Log.d("Logger", "Filename: " + et.getText().toString());
 
                 try {
-                    mService.write(et.getText().toString(), mFilterTag);
+                    mService.writeWithProgress(et.getText().toString(), mFilterTag, mExportCallback);
                 } catch (RemoteException e) {
                     Log.e("Logger", "Trouble writing the log to a file");
                 }
@@ -280,6 +569,9 @@ public class Logger extends ListActivity {
                 EditText et = (EditText) mDialog.findViewById(R.id.filename);
                 mFilterTag = et.getText().toString().trim();
                 updateFilterTag();
+            } else if (which == -3) {
+                mDialog.dismiss();
+                onCreateDialog(DIALOG_TAG_LIST_ID);
             } else {
                 EditText et = (EditText) mDialog.findViewById(R.id.filename);
                 et.setText("");
@@ -289,6 +581,152 @@ public class Logger extends ListActivity {
         }
     };
 
+    DialogInterface.OnClickListener mTagListListener = new DialogInterface.OnClickListener() {
+        public void onClick(DialogInterface dialog, int which) {
+            mFilterTag = mSeenTags[which];
+            updateFilterTag();
+        }
+    };
+
+    DialogInterface.OnClickListener mSearchListener = new DialogInterface.OnClickListener() {
+        public void onClick(DialogInterface dialog, int which) {
+            if (which == -1) {
+                EditText et = (EditText) mDialog.findViewById(R.id.filename);
+                mQuery = et.getText().toString();
+                mResults.clear();
+
+                if (mSearch != null) {
+                    mSearch.cancel(false);
+                    mSearch = null;
+                }
+
+                searchMore();
+            }
+        }
+    };
+
+    DialogInterface.OnClickListener mResultsListener = new DialogInterface.OnClickListener() {
+        public void onClick(DialogInterface dialog, int which) {
+            if (which == -3) {
+                searchMore();
+            }
+        }
+    };
+
+    /*
+     * Fetches the next page of matches, older than the last one we got, and shows the
+     * results so far. The service does the searching against its index, but whatever
+     * the index doesn't cover yet it has to read through, so it's done off the UI
+     * thread. Asking for more while a page is on its way does nothing.
+     */
+    private void searchMore() {
+        if (mSearch != null || mService == null) {
+            return;
+        }
+
+        long before = mResults.size() == 0 ? Long.MAX_VALUE : mResults.get(mResults.size() - 1).seq;
+        mSearch = new SearchTask(mService, mQuery);
+        mSearch.execute(before);
+    }
+
+    private class SearchTask extends AsyncTask<Long, Void, List<LogEntry>> {
+        private final ILogProcessor mSearched;
+        private final String mFor;
+
+        SearchTask(ILogProcessor service, String query) {
+            mSearched = service;
+            mFor = query;
+        }
+
+        @Override
+        protected List<LogEntry> doInBackground(Long... before) {
+            try {
+                return mSearched.search(mFor, before[0], SEARCH_PAGE);
+            } catch (RemoteException e) {
+                Log.e("Logger", "Service is gone...");
+                return new ArrayList<LogEntry>();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(List<LogEntry> page) {
+            // replaced by a new search meanwhile, this page belongs to the old one.
+            if (mSearch != this || page == null) {
+                return;
+            }
+
+            mSearch = null;
+            mResults.addAll(page);
+            mMoreResults = page.size() == SEARCH_PAGE;
+            mDialog.dismiss();
+            onCreateDialog(DIALOG_SEARCH_RESULTS_ID);
+        }
+    }
+
+    /*
+     * Builds the "tag (count)" labels for the tag picker, busiest tags first, noting
+     * how many lines of each were collapsed or rate limited. The service hands us the
+     * arrays indexed by tag id.
+     */
+    private CharSequence[] getSeenTags() {
+        String[] tags;
+        int[] counts;
+        int[] suppressed;
+
+        try {
+            tags = mService.getTags();
+            counts = mService.getTagCounts();
+            suppressed = mService.getSuppressedCounts();
+        } catch (RemoteException e) {
+            Log.e("Logger", "Service is gone...");
+            tags = new String[0];
+            counts = new int[0];
+            suppressed = new int[0];
+        }
+
+        int n = 0;
+        int[] ids = new int[Math.min(tags.length, counts.length)];
+
+        for (int i = 0; i < ids.length; i++) {
+            if (counts[i] > 0) {
+                ids[n++] = i;
+            }
+        }
+
+        // insertion sort by count, the list is short.
+        for (int i = 1; i < n; i++) {
+            int id = ids[i];
+            int j = i - 1;
+
+            while (j >= 0 && counts[ids[j]] < counts[id]) {
+                ids[j + 1] = ids[j];
+                j--;
+            }
+
+            ids[j + 1] = id;
+        }
+
+        mSeenTags = new String[n];
+        CharSequence[] labels = new CharSequence[n];
+
+        for (int i = 0; i < n; i++) {
+            mSeenTags[i] = tags[ids[i]];
+            int dropped = ids[i] < suppressed.length ? suppressed[ids[i]] : 0;
+            labels[i] = tags[ids[i]] + " (" + counts[ids[i]] + (dropped > 0 ? ", " + dropped + " suppressed" : "") + ")";
+        }
+
+        return labels;
+    }
+
+    private boolean isBackground() {
+        try {
+            return mService != null && mService.isBackground();
+        } catch (RemoteException e) {
+            Log.e("Logger", "Service is gone...");
+            return false;
+        }
+    }
+
     public void stopLogging() {
         unbindService(mConnection);
         mServiceRunning = false;
@@ -309,11 +747,37 @@ public class Logger extends ListActivity {
         }
     }
 
-    private void updateFilter() {
-        mAdapter.resetLines();
+    /*
+     * Keeps track of whether the last line is on screen. The list reports in here
+     * whenever it scrolls or lays out, at most once a frame, so the adapter never has
+     * to ask while binding rows.
+     */
+    AbsListView.OnScrollListener mScrollListener = new AbsListView.OnScrollListener() {
+        public void onScroll(AbsListView view, int firstVisible, int visibleCount, int totalCount) {
+            mFollowTail = totalCount == 0 || firstVisible + visibleCount >= totalCount;
+        }
 
+        public void onScrollStateChanged(AbsListView view, int scrollState) {
+            if (mFrameMeter != null) {
+                mFrameMeter.setScrolling(scrollState != SCROLL_STATE_IDLE);
+            }
+        }
+    };
+
+    /*
+     * Pushes the current level and tag selection down to the service, which drops
+     * anything that doesn't match before it ever reaches the adapter.
+     */
+    private void applyFilter() throws RemoteException {
+        char level = mFilter == -1 ? LogFilter.LEVEL_ALL : mFilters[mFilter];
+        String[] tags = mFilterTag.equals("") ? null : new String[] { mFilterTag };
+        String[] excluded = mExcludedTags.size() == 0 ? null : mExcludedTags.toArray(new String[mExcludedTags.size()]);
+        mService.setFilter(level, tags, excluded, LogFilter.PID_ALL, null, false);
+    }
+
+    private void updateFilter() {
         try {
-            mService.reset(buffers[mBuffer].toString());
+            applyFilter();
         } catch (RemoteException e) {
             Log.e("Logger", "Service is gone...");
         }
@@ -325,7 +789,7 @@ public class Logger extends ListActivity {
         mAdapter.resetLines();
 
         try {
-            mService.reset(buffers[mBuffer].toString());
+            mService.setBuffers(getSelectedBuffers());
         } catch (RemoteException e) {
             Log.e("Logger", "Service is gone...");
         }
@@ -333,6 +797,66 @@ public class Logger extends ListActivity {
         mDialog.dismiss();
     }
 
+    /*
+     * Takes the buffers, log, rate, outputs and filter from a service that is already
+     * running, so coming back to it doesn't reset them to this activity's defaults.
+     */
+    private void readSettings() throws RemoteException {
+        String[] running = mService.getBuffers();
+
+        for (int i = 0; i < buffers.length; i++) {
+            mBuffers[i] = false;
+
+            for (int j = 0; running != null && j < running.length; j++) {
+                if (buffers[i].toString().equalsIgnoreCase(running[j])) {
+                    mBuffers[i] = true;
+                }
+            }
+        }
+
+        mLogType = mService.getType();
+        int rate = mService.getRateLimit();
+        mRate = 0;
+
+        for (int i = 0; i < mRates.length; i++) {
+            if (mRates[i] == rate) {
+                mRate = i;
+            }
+        }
+
+        mOutputs[0] = mService.getFileOutput() != null;
+        mOutputs[1] = mService.getSocketOutput() != null;
+        char level = mService.getFilterLevel();
+        mFilter = -1;
+
+        for (int i = 0; i < mFilters.length; i++) {
+            if (mFilters[i] == level) {
+                mFilter = i;
+            }
+        }
+
+        String[] tags = mService.getIncludeTags();
+        mFilterTag = tags == null || tags.length == 0 ? "" : tags[0];
+        String[] excluded = mService.getExcludeTags();
+        mExcludedTags.clear();
+
+        for (int i = 0; excluded != null && i < excluded.length; i++) {
+            mExcludedTags.add(excluded[i]);
+        }
+    }
+
+    private String[] getSelectedBuffers() {
+        ArrayList<String> selected = new ArrayList<String>();
+
+        for (int i = 0; i < buffers.length; i++) {
+            if (mBuffers[i]) {
+                selected.add(buffers[i].toString());
+            }
+        }
+
+        return selected.toArray(new String[selected.size()]);
+    }
+
     private void updateLog() {
         mAdapter.resetLines();
 
@@ -346,10 +870,8 @@ public class Logger extends ListActivity {
     }
     
     private void updateFilterTag() {
-        mAdapter.resetLines();
-
         try {
-            mService.reset(buffers[mBuffer].toString());
+            applyFilter();
         } catch (RemoteException e) {
             Log.e("Logger", "Service is gone...");
         }
@@ -357,18 +879,51 @@ public class Logger extends ListActivity {
         mDialog.dismiss();
     }
     
+    private ProgressDialog showExportProgress(String message) {
+        ProgressDialog dialog = new ProgressDialog(this);
+        dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        dialog.setMessage(message);
+        dialog.setCancelable(false);
+        dialog.setButton("Cancel", mCancelExportListener);
+        dialog.show();
+        return dialog;
+    }
+
+    DialogInterface.OnClickListener mCancelExportListener = new DialogInterface.OnClickListener() {
+        public void onClick(DialogInterface dialog, int which) {
+            try {
+                mService.cancelWrite();
+            } catch (RemoteException e) {
+                Log.e("Logger", "Service is gone...");
+            }
+        }
+    };
+
+    /*
+     * Called on the export thread, hop over to the UI thread before touching the dialog.
+     */
+    private ILogExportCallback.Stub mExportCallback = new ILogExportCallback.Stub() {
+        public void onProgress(int lines, int total) {
+            Message.obtain(mHandler, LogProcessor.MSG_LOG_PROGRESS, lines, total).sendToTarget();
+        }
+    };
+
     private void saveResult(String msg) {
         mProgressDialog.dismiss();
 
         if (msg.equals("error")) {
             Toast.makeText(this, "Error while saving the log to file!", Toast.LENGTH_LONG).show();
+        } else if (msg.equals("cancelled")) {
+            Toast.makeText(this, "Saving the log was cancelled.", Toast.LENGTH_SHORT).show();
+        } else if (msg.equals("busy")) {
+            Toast.makeText(this, "Still saving the last log, try again in a moment.", Toast.LENGTH_SHORT).show();
         } else if (msg.equals("saved")) {
             Toast.makeText(this, "Log has been saved to file.", Toast.LENGTH_LONG).show();
         } else if (msg.equals("attachment")) {
             Intent mail = new Intent(Intent.ACTION_SEND);
-            mail.setType("text/plain");
+            mail.setType("application/x-gzip");
             mail.putExtra(Intent.EXTRA_SUBJECT, "Logger Debug Output");
-            mail.putExtra(Intent.EXTRA_STREAM, Uri.parse("file:///sdcard/tmp.log"));
+            mail.putExtra(Intent.EXTRA_STREAM, Uri.parse("file:///sdcard/" + LogProcessor.ATTACHMENT_FILE));
             mail.putExtra(Intent.EXTRA_TEXT, "Here's the output from my log file. Thanks!");
             startActivity(Intent.createChooser(mail, "Email:"));
         }
@@ -378,7 +933,7 @@ public class Logger extends ListActivity {
         onCreateDialog(DIALOG_EMAIL_ID);
 
         try {
-            mService.write("tmp.log", mFilterTag);
+            mService.writeWithProgress(LogProcessor.ATTACHMENT_FILE, mFilterTag, mExportCallback);
         } catch (RemoteException e) {
             Log.e("Logger", "Error generating email attachment.");
         }
@@ -393,8 +948,30 @@ public class Logger extends ListActivity {
             case LogProcessor.MSG_LOG_FAIL:
                 Log.d("Logger", "MSG_LOG_FAIL");
                 break;
-            case LogProcessor.MSG_NEW_LINE:
-                mAdapter.addLine((String) msg.obj);
+            case LogProcessor.MSG_RESET_LOG:
+                mAdapter.setLines((List<LogEntry>) msg.obj);
+                break;
+            case LogProcessor.MSG_NEW_LINES:
+                if (msg.arg1 > 0) {
+                    Log.w("Logger", "UI fell behind, " + msg.arg1 + " lines dropped");
+                }
+
+                List<LogEntry> lines = (List<LogEntry>) msg.obj;
+                mAdapter.addLines(lines);
+
+                if (mService != null && lines.size() > 0) {
+                    try {
+                        mService.linesShown(lines.get(0).received);
+                    } catch (RemoteException e) {
+                        Log.e("Logger", "Service is gone...");
+                    }
+                }
+                break;
+            case LogProcessor.MSG_LOG_PROGRESS:
+                if (mProgressDialog != null) {
+                    mProgressDialog.setMax(msg.arg2);
+                    mProgressDialog.setProgress(msg.arg1);
+                }
                 break;
             case LogProcessor.MSG_LOG_SAVE:
                 saveResult((String) msg.obj);
@@ -405,17 +982,65 @@ public class Logger extends ListActivity {
         }
     };
 
+    /*
+     * Refreshes the metrics strip once a second while it's showing.
+     */
+    private Runnable mMetricsUpdater = new Runnable() {
+        public void run() {
+            if (mService != null) {
+                try {
+                    showMetrics(mService.getMetrics());
+                } catch (RemoteException e) {
+                    Log.e("Logger", "Service is gone...");
+                }
+            }
+
+            mHandler.postDelayed(this, METRICS_INTERVAL);
+        }
+    };
+
+    private void showMetrics(MetricsSnapshot m) {
+        ((TextView) findViewById(R.id.metrics)).setText("in " + m.linesPerSecond + " lines/s, "
+                + m.bytesPerSecond / 1024 + " KB/s, " + Math.round(m.passRatio() * 100) + "% pass filter\n"
+                + "parse us p50/p99 " + m.parseNanos[0] / 1000 + "/" + m.parseNanos[2] / 1000
+                + ", lag ms p50/p99/max " + m.lagMillis[0] + "/" + m.lagMillis[2] + "/" + m.lagMillis[3] + "\n"
+                + "backlog p99/max " + m.backlog[2] + "/" + m.backlog[3] + ", dropped ui " + m.uiDropped
+                + " sinks " + m.sinkDropped + ", rate limited " + m.suppressed);
+    }
+
     private ServiceConnection mConnection = new ServiceConnection() {
         public void onServiceConnected(ComponentName className, IBinder service) {
             mService = ILogProcessor.Stub.asInterface((IBinder)service);
             LogProcessor.setHandler(mHandler);
 
             try {
-                mService.run(mLogType);
-                mServiceRunning = true;
+                // still capturing, either from before the pause or in the background
+                // while the activity was gone: go with what the service is doing.
+                if (mService.getState() == LogProcessor.STATE_RUNNING) {
+                    readSettings();
+
+                    if (!mAdapter.resume()) {
+                        applyFilter();
+                    }
+
+                    mService.run(mLogType);
+                    mServiceRunning = true;
+                } else {
+                    applyFilter();
+                    mService.setRateLimit(mRates[mRate], mRates[mRate]);
+                    applyOutputs();
+                    mService.setBuffers(getSelectedBuffers());
+                    mService.run(mLogType);
+                    mServiceRunning = true;
+                }
             } catch (RemoteException e) {
                 Log.e("Logger", "Could not start logging");
             }
+
+            if (mShowMetrics) {
+                mHandler.removeCallbacks(mMetricsUpdater);
+                mMetricsUpdater.run();
+            }
         }
 
         public void onServiceDisconnected(ComponentName className) {
@@ -425,21 +1050,37 @@ public class Logger extends ListActivity {
     };
 
     /*
-     * This is the list adapter for the Logger, it holds an array of strings and adds them
-     * to the list view recycling views for obvious performance reasons.
+     * This is the list adapter for the Logger. It doesn't keep the log itself: the
+     * service holds the lines that passed the filter as a view over its store, and the
+     * adapter pulls in the pages the list is actually showing (plus the next one near
+     * a page edge), holding on to the last few in a small LRU cache. So the activity's
+     * memory stays flat however long logging runs. Without a store the service can't
+     * page, and the adapter falls back to keeping the last MAX_LINES lines it was sent.
      */
     public class LoggerListAdapter extends BaseAdapter {
+        public static final int PAGE_LINES = 64;
+        public static final int PREFETCH_LINES = 16;
+        public static final int CACHED_PAGES = 8;
+        public static final int RENDERED_LINES = 512;
         private Context mContext;
-        private ArrayList<String> mLines;
+        private ArrayList<LogEntry> mLines;
+        private boolean mPaged = false;
+        private long mOrigin = 0;
+        private int mCount = 0;
+        private final RenderCache mRendered = new RenderCache(RENDERED_LINES);
+        private final long[] mPageNumbers = new long[CACHED_PAGES];
+        private final long[] mPageUsed = new long[CACHED_PAGES];
+        private final Object[] mPages = new Object[CACHED_PAGES];
+        private long mClock = 0;
 
         public LoggerListAdapter(Context c) {
             mContext = c;
-            mLines = new ArrayList<String>();
+            mLines = new ArrayList<LogEntry>();
             mInflater = (LayoutInflater) c.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         }
 
         public int getCount() {
-            return mLines.size();
+            return mPaged ? mCount : mLines.size();
         }
 
         public long getItemId(int pos) {
@@ -447,12 +1088,12 @@ public class Logger extends ListActivity {
         }
 
         public Object getItem(int pos) {
-            return mLines.get(pos);
+            return mPaged ? fetch(mOrigin + pos) : mLines.get(pos);
         }
 
         public View getView(int pos, View convertView, ViewGroup parent) {
             TextView holder;
-            String line = mLines.get(pos);
+            LogEntry line = (LogEntry) getItem(pos);
 
             if (convertView == null) {
                 //inflate the view here because there's no existing view object.
@@ -466,91 +1107,289 @@ public class Logger extends ListActivity {
                 holder = (TextView) convertView.getTag();
             }
 
-            if (mLogType == 0) {
-                holder.setText(new LogFormattedString(line));
+            if (line == null) {
+                // rotated out of the store since the list last looked.
+                holder.setText("");
+            } else if (mLogType == 0) {
+                holder.setText(mRendered.get(line));
             } else {
-                holder.setText(line);
+                holder.setText(line.line);
             }
 
-            final boolean autoscroll = 
-                    (getListView().getScrollY() + getListView().getHeight() >= getListView().getBottom()) ? true : false;
+            return convertView;
+        }
 
-            if (autoscroll) {
-                getListView().setSelection(mLines.size() - 1);
+        public void addLines(List<LogEntry> lines) {
+            if (!refresh()) {
+                mLines.addAll(lines);
+                trim();
             }
 
-            return convertView;
+            notifyDataSetChanged();
+            followTail();
         }
 
-        public void addLine(String line) {
-            if (mFilter != -1 && line.charAt(0) != mFilters[mFilter]) {
-                return;
+        /*
+         * Starts over after a filter change. When paging, the service has rebuilt its
+         * view and lines is null.
+         */
+        public void setLines(List<LogEntry> lines) {
+            clearPages();
+            mRendered.clear();
+            mLines.clear();
+            long[] range = getRange();
+
+            if (range != null) {
+                mPaged = true;
+                mOrigin = range[0];
+                mCount = (int) (range[1] - range[0]);
+            } else if (lines != null) {
+                mPaged = false;
+                mLines.addAll(lines);
+                trim();
             }
 
-            if (!mFilterTag.equals("")) {
-                String tag = line.substring(2, line.indexOf("("));
+            notifyDataSetChanged();
+            followTail();
+        }
 
-                if (!mFilterTag.toLowerCase().equals(tag.toLowerCase().trim())) {
-                    return;
-                }
+        /*
+         * Picks up after the activity has been away while the service kept capturing.
+         * The list's positions in the service's view still hold, so catching up on
+         * whatever came in meanwhile is the same refresh as for any batch, and only
+         * rows that get shown are fetched. A fresh adapter just takes the view as the
+         * service has it. Returns false if the service can't page.
+         */
+        public boolean resume() {
+            if (!refresh()) {
+                return false;
             }
 
-            mLines.add(line);
             notifyDataSetChanged();
+            followTail();
+            return true;
         }
- 
+
+        /*
+         * Empties the list; only lines arriving from now on show up.
+         */
         public void resetLines() {
+            clearPages();
+            mRendered.clear();
             mLines.clear();
+            long[] range = getRange();
+
+            if (range != null) {
+                mPaged = true;
+                mOrigin = range[1];
+            }
+
+            mCount = 0;
             notifyDataSetChanged();
         }
 
         public void updateView() {
             notifyDataSetChanged();
         }
-    }
 
-    private static class LogFormattedString extends SpannableString {
-        public static final HashMap<Character, Integer> LABEL_COLOR_MAP;
+        /*
+         * Once per batch rather than once per bound row: jump to the newest line if
+         * the user was sitting at the bottom. Selecting before the next layout also
+         * keeps that layout from reporting us scrolled off the end.
+         */
+        private void followTail() {
+            if (mFollowTail && getCount() > 0) {
+                getListView().setSelection(getCount() - 1);
+            }
+        }
 
-        public LogFormattedString(String line) {
-            super(line);
+        /*
+         * Catches up with the end of the service's view. The page that used to hold the
+         * last line may have been fetched half full, so it gets thrown away. Returns
+         * false if the service can't page.
+         */
+        private boolean refresh() {
+            long[] range = getRange();
+
+            if (range == null) {
+                mPaged = false;
+                return false;
+            }
 
-            try {
-                if (line.length() < 4) {
-                    throw new RuntimeException();
+            if (!mPaged) {
+                mPaged = true;
+                mOrigin = range[0];
+                mLines.clear();
+            }
+
+            removePage((mOrigin + mCount) / PAGE_LINES);
+            mOrigin = Math.max(mOrigin, range[0]);
+            mCount = (int) (range[1] - mOrigin);
+            return true;
+        }
+
+        private LogEntry fetch(long index) {
+            long page = index / PAGE_LINES;
+            int offset = (int) (index - page * PAGE_LINES);
+            List<LogEntry> lines = getPage(page);
+
+            if (offset >= PAGE_LINES - PREFETCH_LINES && (page + 1) * PAGE_LINES < mOrigin + mCount) {
+                getPage(page + 1);
+            } else if (offset < PREFETCH_LINES && page * PAGE_LINES > mOrigin) {
+                getPage(page - 1);
+            }
+
+            return offset < lines.size() ? lines.get(offset) : null;
+        }
+
+        /*
+         * The page cache is a handful of slots searched in turn, evicting the least
+         * recently used; a map would box the page number on every bind.
+         */
+        @SuppressWarnings("unchecked")
+        private List<LogEntry> getPage(long page) {
+            int victim = 0;
+
+            for (int i = 0; i < CACHED_PAGES; i++) {
+                if (mPages[i] != null && mPageNumbers[i] == page) {
+                    mPageUsed[i] = ++mClock;
+                    return (List<LogEntry>) mPages[i];
                 }
 
-                if (line.charAt(1) != '/') {
-                    throw new RuntimeException();
+                if (mPages[victim] != null && (mPages[i] == null || mPageUsed[i] < mPageUsed[victim])) {
+                    victim = i;
                 }
+            }
 
-                Integer labelColor = LABEL_COLOR_MAP.get(line.charAt(0));
+            List<LogEntry> lines;
 
-                if (labelColor == null) {
-                    labelColor = LABEL_COLOR_MAP.get('E');
-                }
+            try {
+                lines = mService.getLines(page * PAGE_LINES, PAGE_LINES);
+            } catch (RemoteException e) {
+                Log.e("Logger", "Service is gone...");
+                return new ArrayList<LogEntry>();
+            }
 
-                setSpan(new ForegroundColorSpan(labelColor), 0, 1, 0);
-                setSpan(new StyleSpan(Typeface.BOLD), 0, 1, 0);
+            mPages[victim] = lines;
+            mPageNumbers[victim] = page;
+            mPageUsed[victim] = ++mClock;
+            return lines;
+        }
 
-                int leftIdx;
- 
-                if ((leftIdx = line.indexOf(':', 2)) >= 0) {
-                    setSpan(new ForegroundColorSpan(labelColor), 2, leftIdx, 0);
-                    setSpan(new StyleSpan(Typeface.ITALIC), 2, leftIdx, 0);
+        private void removePage(long page) {
+            for (int i = 0; i < CACHED_PAGES; i++) {
+                if (mPageNumbers[i] == page) {
+                    mPages[i] = null;
                 }
-            } catch (Exception e) {
-                setSpan(new ForegroundColorSpan(0xffddaacc), 0, length(), 0);
             }
         }
-    	
+
+        private void clearPages() {
+            Arrays.fill(mPages, null);
+        }
+
+        private long[] getRange() {
+            if (mService == null) {
+                return null;
+            }
+
+            try {
+                return mService.getLineRange();
+            } catch (RemoteException e) {
+                Log.e("Logger", "Service is gone...");
+                return null;
+            }
+        }
+
+        private void trim() {
+            if (mLines.size() > MAX_LINES) {
+                mLines.subList(0, mLines.size() - MAX_LINES).clear();
+            }
+        }
+    }
+
+    /*
+     * The formatted text of the rows bound most recently, so scrolling back over a row
+     * doesn't format it again. Direct mapped on the entry's sequence number, which
+     * keeps a run of consecutive lines from colliding and a hit free of allocation;
+     * entries that never made it to the store are keyed by identity instead.
+     */
+    private static class RenderCache {
+        private final LogEntry[] mKeys;
+        private final CharSequence[] mValues;
+
+        RenderCache(int size) {
+            // size has to be a power of two.
+            mKeys = new LogEntry[size];
+            mValues = new CharSequence[size];
+        }
+
+        CharSequence get(LogEntry entry) {
+            boolean stored = entry.seq != LogEntry.NO_SEQ;
+            int slot = (stored ? (int) entry.seq : System.identityHashCode(entry)) & (mKeys.length - 1);
+            LogEntry key = mKeys[slot];
+
+            if (key != null && (key == entry || (stored && key.seq == entry.seq))) {
+                return mValues[slot];
+            }
+
+            CharSequence text = new LogFormattedString(entry);
+            mKeys[slot] = entry;
+            mValues[slot] = text;
+            return text;
+        }
+
+        void clear() {
+            Arrays.fill(mKeys, null);
+            Arrays.fill(mValues, null);
+        }
+    }
+
+    /*
+     * A log line colored by level. Spans hold no per-line state, so every line shares
+     * the same few instances; a span can only sit once in one string, which is why the
+     * level letter and the tag get one each.
+     */
+    private static class LogFormattedString extends SpannableString {
+        private static final int[] LEVEL_COLORS = new int[128];
+        private static final ForegroundColorSpan[] LEVEL_SPANS = new ForegroundColorSpan[128];
+        private static final ForegroundColorSpan[] TAG_SPANS = new ForegroundColorSpan[128];
+        private static final ForegroundColorSpan NO_HEADER_SPAN = new ForegroundColorSpan(0xffddaacc);
+        private static final StyleSpan BOLD_SPAN = new StyleSpan(Typeface.BOLD);
+        private static final StyleSpan ITALIC_SPAN = new StyleSpan(Typeface.ITALIC);
+
+        public LogFormattedString(LogEntry entry) {
+            super(entry.line);
+
+            if (!entry.hasHeader()) {
+                setSpan(NO_HEADER_SPAN, 0, length(), 0);
+                return;
+            }
+
+            int level = entry.level < LEVEL_SPANS.length && LEVEL_SPANS[entry.level] != null ? entry.level : 'E';
+
+            setSpan(LEVEL_SPANS[level], 0, 1, 0);
+            setSpan(BOLD_SPAN, 0, 1, 0);
+
+            if (entry.headerEnd >= 2) {
+                setSpan(TAG_SPANS[level], 2, entry.headerEnd, 0);
+                setSpan(ITALIC_SPAN, 2, entry.headerEnd, 0);
+            }
+        }
+
         static {
-            LABEL_COLOR_MAP = new HashMap<Character, Integer>();
-            LABEL_COLOR_MAP.put('D', 0xff9999ff);
-            LABEL_COLOR_MAP.put('V', 0xffcccccc);
-            LABEL_COLOR_MAP.put('I', 0xffeeeeee);
-            LABEL_COLOR_MAP.put('E', 0xffff9999);
-            LABEL_COLOR_MAP.put('W', 0xffffff99);
+            LEVEL_COLORS['D'] = 0xff9999ff;
+            LEVEL_COLORS['V'] = 0xffcccccc;
+            LEVEL_COLORS['I'] = 0xffeeeeee;
+            LEVEL_COLORS['E'] = 0xffff9999;
+            LEVEL_COLORS['W'] = 0xffffff99;
+
+            for (int i = 0; i < LEVEL_COLORS.length; i++) {
+                if (LEVEL_COLORS[i] != 0) {
+                    LEVEL_SPANS[i] = new ForegroundColorSpan(LEVEL_COLORS[i]);
+                    TAG_SPANS[i] = new ForegroundColorSpan(LEVEL_COLORS[i]);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+ * Reads the records "logcat -B" writes, which are the kernel's logger_entry structs
+ * copied straight out of /dev/log:
+ *
+ *     uint16_t len;       payload length
+ *     uint16_t hdr_size;  0 on older kernels, which always use a 20 byte header
+ *     int32_t  pid, tid, sec, nsec;
+ *     payload:            priority byte, tag\0, message\0
+ *
+ * Records are decoded in place in one reusable buffer. next() only pulls out the
+ * header fields and the tag id, so a caller can throw the record away without
+ * anything having been allocated; toEntry() builds the text for the ones it keeps.
+ * The events buffer uses a binary payload and isn't handled here.
+ */
+public class BinaryLogDecoder {
+	public static final int HEADER_SIZE = 20;
+	public static final int MAX_PAYLOAD = 4076;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private final ReadableByteChannel mIn;
+	private final ByteBuffer mBuf;
+	private final byte[] mBytes;
+	private final TagTable mTags;
+	private char[] mChars = new char[256];
+	private int mPid;
+	private int mSec;
+	private int mNsec;
+	private char mLevel;
+	private int mTagId;
+	private int mMsgStart;
+	private int mMsgEnd;
+
+	public BinaryLogDecoder(InputStream in, TagTable tags) {
+		this(Channels.newChannel(in), tags);
+	}
+
+	public BinaryLogDecoder(ReadableByteChannel in, TagTable tags) {
+		mIn = in;
+		mTags = tags;
+		mBuf = ByteBuffer.allocate(BUFFER_SIZE);
+		mBuf.order(ByteOrder.LITTLE_ENDIAN);
+		mBuf.flip();
+		mBytes = mBuf.array();
+	}
+
+	/*
+	 * Moves to the next record. Returns false at the end of the stream.
+	 */
+	public boolean next() throws IOException {
+		if (!fill(4)) {
+			return false;
+		}
+
+		int start = mBuf.position();
+		int len = mBuf.getShort(start) & 0xffff;
+		int hdrSize = mBuf.getShort(start + 2) & 0xffff;
+
+		if (hdrSize == 0) {
+			hdrSize = HEADER_SIZE;
+		}
+
+		if (hdrSize < HEADER_SIZE || hdrSize > 64 || len > MAX_PAYLOAD) {
+			throw new IOException("Corrupt log record (len " + len + ", header " + hdrSize + ")");
+		}
+
+		if (!fill(hdrSize + len)) {
+			return false;
+		}
+
+		// fill() may have compacted the buffer.
+		start = mBuf.position();
+		mPid = mBuf.getInt(start + 4);
+		mSec = mBuf.getInt(start + 12);
+		mNsec = mBuf.getInt(start + 16);
+
+		int payload = start + hdrSize;
+		int end = payload + len;
+		mBuf.position(end);
+
+		if (len == 0) {
+			mLevel = LogEntry.LEVEL_UNKNOWN;
+			mTagId = TagTable.NO_TAG;
+			mMsgStart = mMsgEnd = end;
+			return true;
+		}
+
+		mLevel = level(mBytes[payload]);
+		int tagEnd = indexOf((byte) 0, payload + 1, end);
+		mTagId = mTags.add(mBytes, payload + 1, tagEnd);
+		mMsgStart = Math.min(tagEnd + 1, end);
+		mMsgEnd = indexOf((byte) 0, mMsgStart, end);
+
+		while (mMsgEnd > mMsgStart && (mBytes[mMsgEnd - 1] == '\n' || mBytes[mMsgEnd - 1] == '\r')) {
+			mMsgEnd--;
+		}
+
+		return true;
+	}
+
+	public int getPid() {
+		return mPid;
+	}
+
+	public long getTime() {
+		return (mSec & 0xffffffffL) * 1000 + mNsec / 1000000;
+	}
+
+	public char getLevel() {
+		return mLevel;
+	}
+
+	public int getTagId() {
+		return mTagId;
+	}
+
+	/*
+	 * Length of the message in bytes, as it sits in the record.
+	 */
+	public int getMessageLength() {
+		return mMsgEnd - mMsgStart;
+	}
+
+	/*
+	 * Builds an entry for the current record, formatted exactly like logcat's brief
+	 * text output so everything downstream treats both modes the same.
+	 */
+	public LogEntry toEntry() {
+		String tag = mTags.getName(mTagId);
+		int max = tag.length() + (mMsgEnd - mMsgStart) + 24;
+
+		if (mChars.length < max) {
+			mChars = new char[max * 2];
+		}
+
+		char[] c = mChars;
+		int n = 0;
+		c[n++] = mLevel == LogEntry.LEVEL_UNKNOWN ? '?' : mLevel;
+		c[n++] = '/';
+		tag.getChars(0, tag.length(), c, n);
+		n += tag.length();
+		c[n++] = '(';
+		n = writePid(c, n, mPid);
+		c[n++] = ')';
+		int headerEnd = n;
+		c[n++] = ':';
+		c[n++] = ' ';
+		int msgStart = n;
+		n = Utf8.decode(mBytes, mMsgStart, mMsgEnd, c, n);
+
+		LogEntry entry = new LogEntry(new String(c, 0, n), mLevel, tag, mTagId, mPid, headerEnd, msgStart, getTime());
+		entry.received = System.currentTimeMillis();
+		return entry;
+	}
+
+	private boolean fill(int needed) throws IOException {
+		while (mBuf.remaining() < needed) {
+			mBuf.compact();
+			int read = mIn.read(mBuf);
+			mBuf.flip();
+
+			if (read < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private int indexOf(byte b, int from, int end) {
+		for (int i = from; i < end; i++) {
+			if (mBytes[i] == b) {
+				return i;
+			}
+		}
+
+		return end;
+	}
+
+	private static char level(byte priority) {
+		switch (priority) {
+		case 2:
+			return 'V';
+		case 3:
+			return 'D';
+		case 4:
+			return 'I';
+		case 5:
+			return 'W';
+		case 6:
+			return 'E';
+		case 7:
+			return 'F';
+		default:
+			return LogEntry.LEVEL_UNKNOWN;
+		}
+	}
+
+	/*
+	 * Right aligns the pid in five columns like logcat does.
+	 */
+	private static int writePid(char[] c, int n, int pid) {
+		int digits = 1;
+
+		for (int p = pid; p >= 10; p /= 10) {
+			digits++;
+		}
+
+		for (int i = digits; i < 5; i++) {
+			c[n++] = ' ';
+		}
+
+		for (int i = n + digits - 1; i >= n; i--) {
+			c[i] = (char) ('0' + pid % 10);
+			pid /= 10;
+		}
+
+		return n + digits;
+	}
+}
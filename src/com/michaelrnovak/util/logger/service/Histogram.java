@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+/*
+ * Counts of non-negative values in log-linear buckets: exact below 16, then eight
+ * buckets per power of two, so any value is placed within an eighth of itself.
+ * Recording is an index computation and an increment into a fixed array, and
+ * percentiles come straight out of the counts, so nothing is allocated after
+ * construction however many values go in.
+ */
+public class Histogram {
+	private static final int LINEAR = 16;
+	private static final int SUB_BITS = 3;
+	private static final int BUCKETS = LINEAR + (64 - 4) * (1 << SUB_BITS);
+	private final long[] mCounts = new long[BUCKETS];
+	private long mCount = 0;
+	private long mMax = 0;
+
+	public synchronized void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+
+		mCounts[bucket(value)]++;
+		mCount++;
+
+		if (value > mMax) {
+			mMax = value;
+		}
+	}
+
+	public synchronized long count() {
+		return mCount;
+	}
+
+	public synchronized long max() {
+		return mMax;
+	}
+
+	/*
+	 * Fills out[i] with the ps[i]-th percentile (0 to 100), rounded up to the top of
+	 * its bucket but never above the largest value seen; 0 if nothing was recorded.
+	 */
+	public synchronized void percentiles(double[] ps, long[] out) {
+		for (int i = 0; i < ps.length; i++) {
+			long rank = (long) Math.ceil(ps[i] / 100 * mCount);
+			long seen = 0;
+			out[i] = 0;
+
+			for (int b = 0; b < BUCKETS && mCount > 0; b++) {
+				seen += mCounts[b];
+
+				if (seen >= Math.max(1, rank)) {
+					out[i] = Math.min(mMax, top(b));
+					break;
+				}
+			}
+		}
+	}
+
+	public synchronized void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			mCounts[i] = 0;
+		}
+
+		mCount = 0;
+		mMax = 0;
+	}
+
+	private static int bucket(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exp - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+		return LINEAR + ((exp - 4) << SUB_BITS) + sub;
+	}
+
+	// the largest value that lands in bucket b.
+	private static long top(int b) {
+		if (b < LINEAR) {
+			return b;
+		}
+
+		int exp = ((b - LINEAR) >> SUB_BITS) + 4;
+		long sub = (b - LINEAR) & ((1 << SUB_BITS) - 1);
+		long low = (1L << exp) + (sub << (exp - SUB_BITS));
+		return exp == 63 && sub == (1 << SUB_BITS) - 1 ? Long.MAX_VALUE : low + (1L << (exp - SUB_BITS)) - 1;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+/*
+ * Hashes of the last lines read, oldest first, so a source that starts over from the
+ * top of its buffer can be told apart from one with something new to say. Positions
+ * count on forever like the ring's sequence numbers; only the last capacity of them
+ * are still around. Readers of several buffers share one, so the lock here is held
+ * for a scan at most.
+ */
+public class LineHistory {
+	private final int[] mHashes;
+	private long mEnd = 0;
+
+	public LineHistory(int capacity) {
+		mHashes = new int[capacity];
+	}
+
+	public synchronized void add(int hash) {
+		mHashes[(int) (mEnd % mHashes.length)] = hash;
+		mEnd++;
+	}
+
+	/*
+	 * Position of the oldest hash still held.
+	 */
+	public synchronized long start() {
+		return Math.max(0, mEnd - mHashes.length);
+	}
+
+	/*
+	 * Position the next hash will get.
+	 */
+	public synchronized long end() {
+		return mEnd;
+	}
+
+	/*
+	 * Position of the first hash equal to hash in [from, to), or -1.
+	 */
+	public synchronized long find(int hash, long from, long to) {
+		to = Math.min(to, mEnd);
+
+		for (long i = Math.max(from, mEnd - mHashes.length); i < to; i++) {
+			if (mHashes[(int) (i % mHashes.length)] == hash) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+}
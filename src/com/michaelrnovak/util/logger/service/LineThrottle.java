@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+/*
+ * Per tag rate limit for the ingest path, a token bucket for each tag id: a tag may
+ * log burst lines at once and then rate lines a second, anything beyond that is
+ * dropped. Off (UNLIMITED) by default. Also keeps the count of lines suppressed per
+ * tag, whether by the limit or because they were collapsed as repeats.
+ */
+public class LineThrottle {
+	public static final int UNLIMITED = 0;
+	private int mRate = UNLIMITED;
+	private int mBurst = 0;
+	private float[] mTokens = new float[128];
+	private long[] mLast = new long[128];
+	private int[] mSuppressed = new int[128];
+
+	/*
+	 * Sets the limit in lines per second, UNLIMITED to turn it off. Every bucket starts
+	 * out full again.
+	 */
+	public synchronized void setRate(int linesPerSecond, int burst) {
+		mRate = Math.max(UNLIMITED, linesPerSecond);
+		mBurst = Math.max(1, burst);
+
+		for (int i = 0; i < mLast.length; i++) {
+			mLast[i] = 0;
+		}
+	}
+
+	/*
+	 * Takes a token for the entry's tag, at time now in milliseconds. Returns false,
+	 * and counts the line as suppressed, if the tag is over its limit. Lines without
+	 * a tag always get through.
+	 */
+	public synchronized boolean admit(LogEntry entry, long now) {
+		int id = entry.tagId;
+
+		if (mRate == UNLIMITED || id == TagTable.NO_TAG) {
+			return true;
+		}
+
+		ensure(id);
+
+		if (mLast[id] == 0) {
+			mTokens[id] = mBurst;
+		} else if (now > mLast[id]) {
+			mTokens[id] = Math.min(mBurst, mTokens[id] + (now - mLast[id]) * mRate / 1000f);
+		}
+
+		mLast[id] = Math.max(now, 1);
+
+		if (mTokens[id] >= 1) {
+			mTokens[id] -= 1;
+			return true;
+		}
+
+		mSuppressed[id]++;
+		return false;
+	}
+
+	/*
+	 * Counts a line that was dropped for repeating the one before it.
+	 */
+	public synchronized void suppressed(LogEntry entry) {
+		if (entry.tagId != TagTable.NO_TAG) {
+			ensure(entry.tagId);
+			mSuppressed[entry.tagId]++;
+		}
+	}
+
+	/*
+	 * Suppressed lines per tag, indexed by tag id like TagTable.getCounts().
+	 */
+	public synchronized int[] getSuppressedCounts() {
+		int[] counts = new int[mSuppressed.length];
+		System.arraycopy(mSuppressed, 0, counts, 0, counts.length);
+		return counts;
+	}
+
+	private void ensure(int id) {
+		if (id < mSuppressed.length) {
+			return;
+		}
+
+		int size = Math.max(id + 1, mSuppressed.length * 2);
+		float[] tokens = new float[size];
+		long[] last = new long[size];
+		int[] suppressed = new int[size];
+		System.arraycopy(mTokens, 0, tokens, 0, mTokens.length);
+		System.arraycopy(mLast, 0, last, 0, mLast.length);
+		System.arraycopy(mSuppressed, 0, suppressed, 0, mSuppressed.length);
+		mTokens = tokens;
+		mLast = last;
+		mSuppressed = suppressed;
+	}
+}
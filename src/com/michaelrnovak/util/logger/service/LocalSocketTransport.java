@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * SocketSink's clients on the device: whoever connects to a local socket in the
+ * abstract namespace. A local socket needs no permission, unlike TCP.
+ */
+public class LocalSocketTransport implements SocketSink.Transport {
+	private final String mAddress;
+	private LocalServerSocket mServer;
+
+	public LocalSocketTransport(String address) {
+		mAddress = address;
+	}
+
+	public void open() throws IOException {
+		mServer = new LocalServerSocket(mAddress);
+	}
+
+	public OutputStream accept() throws IOException {
+		// closing the stream closes the socket.
+		LocalSocket client = mServer.accept();
+		return client.getOutputStream();
+	}
+
+	public void close() {
+		if (mServer == null) {
+			return;
+		}
+
+		try {
+			// accept() doesn't notice the server being closed on every release, so
+			// wake it up with a connection of our own first.
+			LocalSocket wake = new LocalSocket();
+			wake.connect(new LocalSocketAddress(mAddress));
+			wake.close();
+		} catch (IOException e) {
+			Log.w("Logger", "Couldn't wake the log socket: " + e.toString());
+		}
+
+		try {
+			mServer.close();
+		} catch (IOException e) {
+			Log.w("Logger", "Error closing the log socket: " + e.toString());
+		}
+	}
+}
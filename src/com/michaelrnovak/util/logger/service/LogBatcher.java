@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import android.os.Handler;
+import android.os.Message;
+
+import java.util.ArrayList;
+
+/*
+ * Collects lines coming off the reader thread and hands them to the UI handler in
+ * chunks, either once BATCH_LINES have piled up or BATCH_WINDOW_MS after the first
+ * line of a chunk, whichever comes first. While the UI still hasn't picked up the
+ * previous chunk nothing new is posted; lines keep coalescing into the pending chunk
+ * and past MAX_BACKLOG the oldest ones are dropped. The number of dropped lines rides
+ * along in arg1 of the next message. As a sink it's how entries reach the UI.
+ *
+ * The backlog at every hand-over attempt goes into a histogram, if given one.
+ */
+public class LogBatcher<T> implements LogSink {
+	public static final int BATCH_LINES = 64;
+	public static final long BATCH_WINDOW_MS = 16;
+	public static final int MAX_BACKLOG = 2048;
+	private final Handler mHandler;
+	private final int mWhat;
+	private final Histogram mBacklog;
+	private ArrayList<T> mPending = new ArrayList<T>(BATCH_LINES);
+	private int mDropped = 0;
+	private long mTotalDropped = 0;
+	private boolean mFlushScheduled = false;
+
+	public LogBatcher(Handler handler, int what, Histogram backlog) {
+		mHandler = handler;
+		mWhat = what;
+		mBacklog = backlog;
+	}
+
+	private final Runnable mFlusher = new Runnable() {
+		public void run() {
+			synchronized (LogBatcher.this) {
+				mFlushScheduled = false;
+				flush();
+			}
+		}
+	};
+
+	@SuppressWarnings("unchecked")
+	public void publish(LogEntry entry) {
+		add((T) entry);
+	}
+
+	public void close() {
+		clear();
+	}
+
+	public synchronized void add(T line) {
+		mPending.add(line);
+
+		if (mPending.size() >= BATCH_LINES) {
+			flush();
+		} else {
+			scheduleFlush();
+		}
+	}
+
+	public synchronized void flush() {
+		if (mPending.size() == 0) {
+			return;
+		}
+
+		if (mBacklog != null) {
+			mBacklog.record(mPending.size());
+		}
+
+		if (mHandler.hasMessages(mWhat)) {
+			int over = mPending.size() - MAX_BACKLOG;
+
+			if (over > 0) {
+				mPending.subList(0, over).clear();
+				mDropped += over;
+				mTotalDropped += over;
+			}
+
+			scheduleFlush();
+			return;
+		}
+
+		Message.obtain(mHandler, mWhat, mDropped, 0, mPending).sendToTarget();
+		mPending = new ArrayList<T>(BATCH_LINES);
+		mDropped = 0;
+	}
+
+	/*
+	 * Lines dropped for the UI falling behind, over the batcher's whole life.
+	 */
+	public synchronized long getDropped() {
+		return mTotalDropped;
+	}
+
+	/*
+	 * Throws away anything not yet delivered, including a chunk still sitting in the
+	 * handler's queue.
+	 */
+	public synchronized void clear() {
+		mHandler.removeMessages(mWhat);
+		mHandler.removeCallbacks(mFlusher);
+		mFlushScheduled = false;
+		mPending.clear();
+		mDropped = 0;
+	}
+
+	private void scheduleFlush() {
+		if (!mFlushScheduled) {
+			mFlushScheduled = true;
+			mHandler.postDelayed(mFlusher, BATCH_WINDOW_MS);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/*
+ * A single log line as parsed by LogParser. The raw text is kept as is, everything
+ * else is an offset into it or a value pulled out of the header, so nothing has to
+ * look at the text again to filter, color or export it. The time is in milliseconds;
+ * it comes from the log record in binary mode and is the time the line was read
+ * otherwise, since the brief text format doesn't carry one. Record times jump around
+ * (a buffer's backlog, several buffers, the clock being set), so received is kept as
+ * well: when the line reached us, which the store makes sure never goes backwards
+ * and which history is ordered and searched by. Entries are parcelable so the
+ * service can hand out windows of stored history. The sequence number is filled in
+ * by the store once the entry has been written to it and stays NO_SEQ otherwise.
+ */
+public class LogEntry implements Parcelable {
+	public static final char LEVEL_UNKNOWN = 0;
+	public static final long NO_SEQ = -1;
+	public final String line;
+	public final char level;
+	public final String tag;
+	public final int tagId;
+	public final int pid;
+	public final int headerEnd;
+	public final int msgStart;
+	public final long time;
+	public long received;
+	public long seq = NO_SEQ;
+
+	public LogEntry(String line, char level, String tag, int tagId, int pid, int headerEnd, int msgStart,
+			long time) {
+		this.line = line;
+		this.level = level;
+		this.tag = tag;
+		this.tagId = tagId;
+		this.pid = pid;
+		this.headerEnd = headerEnd;
+		this.msgStart = msgStart;
+		this.time = time;
+		this.received = time;
+	}
+
+	public static final Parcelable.Creator<LogEntry> CREATOR = new Parcelable.Creator<LogEntry>() {
+		public LogEntry createFromParcel(Parcel in) {
+			LogEntry entry = new LogEntry(in.readString(), (char) in.readInt(), in.readString(), in.readInt(),
+					in.readInt(), in.readInt(), in.readInt(), in.readLong());
+			entry.received = in.readLong();
+			entry.seq = in.readLong();
+			return entry;
+		}
+
+		public LogEntry[] newArray(int size) {
+			return new LogEntry[size];
+		}
+	};
+
+	public int describeContents() {
+		return 0;
+	}
+
+	public void writeToParcel(Parcel out, int flags) {
+		out.writeString(line);
+		out.writeInt(level);
+		out.writeString(tag);
+		out.writeInt(tagId);
+		out.writeInt(pid);
+		out.writeInt(headerEnd);
+		out.writeInt(msgStart);
+		out.writeLong(time);
+		out.writeLong(received);
+		out.writeLong(seq);
+	}
+
+	public boolean hasHeader() {
+		return level != LEVEL_UNKNOWN;
+	}
+
+	public String getMessage() {
+		return line.substring(msgStart);
+	}
+
+	@Override
+	public String toString() {
+		return line;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+ * Writes a snapshot of log entries out as UTF-8 text through one reusable buffer, so
+ * a line costs neither a String concatenation nor a system call of its own. Progress
+ * goes to an optional listener every PROGRESS_STEP lines and cancel() stops the
+ * export between two lines.
+ */
+public class LogExporter {
+	/*
+	 * Told how far an export has got. LogProcessor passes it on to the activity's
+	 * ILogExportCallback.
+	 */
+	public interface Progress {
+		void onProgress(int lines, int total);
+	}
+
+
+	public static final int BUFFER_SIZE = 64 * 1024;
+	public static final int PROGRESS_STEP = 2048;
+	private final ByteBuffer mBuf = ByteBuffer.allocate(BUFFER_SIZE);
+	private volatile boolean mCancelled = false;
+
+	public void cancel() {
+		mCancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return mCancelled;
+	}
+
+	public int export(List<LogEntry> lines, LogFilter filter, int tagId, WritableByteChannel out,
+			Progress progress) throws IOException {
+		return export(lines.iterator(), lines.size(), filter, tagId, out, progress);
+	}
+
+	/*
+	 * Writes every entry that passes filter (and has tag id tagId, unless that's
+	 * NO_TAG) to out. total is only used for progress reports. Returns the number of
+	 * lines written, or -1 if cancelled.
+	 */
+	public int export(Iterator<LogEntry> lines, int total, LogFilter filter, int tagId, WritableByteChannel out,
+			Progress progress) throws IOException {
+		int written = 0;
+		mBuf.clear();
+
+		for (int i = 0; lines.hasNext(); i++) {
+			if (mCancelled) {
+				return -1;
+			}
+
+			LogEntry entry = lines.next();
+
+			if (filter.matches(entry) && (tagId == TagTable.NO_TAG || entry.tagId == tagId)) {
+				put(entry.line, out);
+				written++;
+			}
+
+			if (progress != null && (i + 1) % PROGRESS_STEP == 0) {
+				progress.onProgress(i + 1, total);
+			}
+		}
+
+		drain(out);
+
+		if (progress != null) {
+			progress.onProgress(total, total);
+		}
+
+		return written;
+	}
+
+	private void put(String line, WritableByteChannel out) throws IOException {
+		int len = Utf8.length(line) + 1;
+
+		if (mBuf.remaining() < len) {
+			drain(out);
+		}
+
+		if (len > BUFFER_SIZE) {
+			ByteBuffer big = ByteBuffer.allocate(len);
+			Utf8.encode(line, big);
+			big.put((byte) '\n');
+			big.flip();
+
+			while (big.hasRemaining()) {
+				out.write(big);
+			}
+
+			return;
+		}
+
+		Utf8.encode(line, mBuf);
+		mBuf.put((byte) '\n');
+	}
+
+	private void drain(WritableByteChannel out) throws IOException {
+		mBuf.flip();
+
+		while (mBuf.hasRemaining()) {
+			out.write(mBuf);
+		}
+
+		mBuf.clear();
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/*
+ * A filter spec compiled down to what the reader thread needs to check per entry: a
+ * priority, sorted arrays of tag ids and either a plain substring or a regex for the
+ * message. Instances are immutable, swapping in a new filter is a single assignment.
+ */
+public class LogFilter {
+	public static final char LEVEL_ALL = 0;
+	public static final int PID_ALL = -1;
+	public static final LogFilter NONE = new LogFilter(0, null, null, PID_ALL, null, null);
+	private final int mMinPriority;
+	private final int[] mInclude;
+	private final int[] mExclude;
+	private final int mPid;
+	private final String mText;
+	private final Pattern mPattern;
+
+	private LogFilter(int minPriority, int[] include, int[] exclude, int pid, String text, Pattern pattern) {
+		mMinPriority = minPriority;
+		mInclude = include;
+		mExclude = exclude;
+		mPid = pid;
+		mText = text;
+		mPattern = pattern;
+	}
+
+	/*
+	 * Tags are resolved to ids up front (registering the ones not seen yet) so matching
+	 * never touches a string. An empty or null argument means "don't filter on this".
+	 */
+	public static LogFilter compile(char minLevel, String[] include, String[] exclude, int pid,
+			String message, boolean regex, TagTable tags) {
+		String text = null;
+		Pattern pattern = null;
+
+		if (message != null && message.length() > 0) {
+			if (regex) {
+				pattern = Pattern.compile(message);
+			} else {
+				text = message;
+			}
+		}
+
+		return new LogFilter(priority(minLevel), toIds(include, tags), toIds(exclude, tags), pid, text, pattern);
+	}
+
+	public boolean matches(LogEntry entry) {
+		if (!matchesHeader(entry.level, entry.tagId, entry.pid)) {
+			return false;
+		}
+
+		if (mText != null && entry.line.indexOf(mText, entry.msgStart) < 0) {
+			return false;
+		}
+
+		if (mPattern != null && !mPattern.matcher(entry.line).region(entry.msgStart, entry.line.length()).find()) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/*
+	 * The checks that only need the header fields, for callers that want to decide
+	 * before they've built the entry at all.
+	 */
+	public boolean matchesHeader(char level, int tagId, int pid) {
+		if (mMinPriority > 0 && priority(level) < mMinPriority) {
+			return false;
+		}
+
+		if (mInclude != null && Arrays.binarySearch(mInclude, tagId) < 0) {
+			return false;
+		}
+
+		if (mExclude != null && Arrays.binarySearch(mExclude, tagId) >= 0) {
+			return false;
+		}
+
+		if (mPid != PID_ALL && pid != mPid) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/*
+	 * Maps a level letter to logcat's priority order, 0 for anything unknown.
+	 */
+	public static int priority(char level) {
+		switch (level) {
+		case 'V':
+			return 2;
+		case 'D':
+			return 3;
+		case 'I':
+			return 4;
+		case 'W':
+			return 5;
+		case 'E':
+			return 6;
+		case 'F':
+		case 'A':
+			return 7;
+		default:
+			return 0;
+		}
+	}
+
+	private static int[] toIds(String[] names, TagTable tags) {
+		if (names == null) {
+			return null;
+		}
+
+		int[] ids = new int[names.length];
+		int n = 0;
+
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i] == null ? "" : names[i].trim();
+
+			if (name.length() > 0) {
+				ids[n++] = tags.getId(name, true);
+			}
+		}
+
+		if (n == 0) {
+			return null;
+		}
+
+		int[] sorted = new int[n];
+		System.arraycopy(ids, 0, sorted, 0, n);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Merges several rings, each already in the order its lines were read, into one
+ * timeline ordered by the log's own timestamp, for a snapshot of what the readers
+ * hold. That is the record time in binary mode; the brief text format has none, so
+ * there it is the time the line was read. Within a ring the order is left alone,
+ * so if the clock is set back the merge is only as good as it gets before and after
+ * the jump. Live lines aren't merged, they go out in the order they arrive in,
+ * which is the order they were logged in as far as anyone watching can tell. There
+ * are only ever a handful of sources, so picking the next entry is a linear scan
+ * over their heads.
+ */
+public class LogMerger {
+	private LogMerger() {
+	}
+
+	public static List<LogEntry> merge(List<LogRingBuffer<LogEntry>> sources) {
+		int n = sources.size();
+		List<List<LogEntry>> lines = new ArrayList<List<LogEntry>>(n);
+		int[] pos = new int[n];
+		int total = 0;
+
+		for (int i = 0; i < n; i++) {
+			List<LogEntry> ring = sources.get(i).snapshot();
+			lines.add(ring);
+			total += ring.size();
+		}
+
+		ArrayList<LogEntry> out = new ArrayList<LogEntry>(total);
+
+		while (out.size() < total) {
+			int best = -1;
+			long bestTime = 0;
+
+			for (int i = 0; i < n; i++) {
+				List<LogEntry> ring = lines.get(i);
+
+				if (pos[i] < ring.size()) {
+					long time = ring.get(pos[i]).time;
+
+					if (best < 0 || time < bestTime) {
+						best = i;
+						bestTime = time;
+					}
+				}
+			}
+
+			out.add(lines.get(best).get(pos[best]++));
+		}
+
+		return out;
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+/*
+ * Turns the text logcat prints in its default (brief) format into LogEntry records:
+ *
+ *     D/Tag( 1234): message
+ *
+ * Anything that doesn't look like that (dmesg output, the "beginning of" banners,
+ * tags without a pid) still yields an entry, just with fewer fields filled in.
+ */
+public class LogParser {
+	private final TagTable mTags;
+	private final boolean mCount;
+
+	public LogParser(TagTable tags) {
+		this(tags, true);
+	}
+
+	/*
+	 * A parser that doesn't count lines against their tags, for re-reading entries
+	 * that were counted when they were first ingested.
+	 */
+	public LogParser(TagTable tags, boolean count) {
+		mTags = tags;
+		mCount = count;
+	}
+
+	public LogEntry parse(String line, long time) {
+		int len = line.length();
+
+		if (len < 2 || line.charAt(1) != '/' || !isLevel(line.charAt(0))) {
+			return new LogEntry(line, LogEntry.LEVEL_UNKNOWN, "", TagTable.NO_TAG, -1, -1, 0, time);
+		}
+
+		int colon = line.indexOf(':', 2);
+		int paren = line.indexOf('(', 2);
+		int tagEnd;
+		int pid = -1;
+
+		if (paren >= 0 && (colon < 0 || paren < colon)) {
+			tagEnd = paren;
+			int close = line.indexOf(')', paren);
+
+			if (close >= 0) {
+				pid = parsePid(line, paren + 1, close);
+				colon = line.indexOf(':', close);
+			}
+		} else if (colon >= 0) {
+			tagEnd = colon;
+		} else {
+			tagEnd = len;
+		}
+
+		while (tagEnd > 2 && line.charAt(tagEnd - 1) == ' ') {
+			tagEnd--;
+		}
+
+		int msgStart = len;
+
+		if (colon >= 0) {
+			msgStart = colon + 1;
+
+			if (msgStart < len && line.charAt(msgStart) == ' ') {
+				msgStart++;
+			}
+		}
+
+		int tagId = mCount ? mTags.add(line, 2, tagEnd) : mTags.intern(line, 2, tagEnd);
+
+		return new LogEntry(line, line.charAt(0), mTags.getName(tagId), tagId, pid, colon, msgStart, time);
+	}
+
+	private static boolean isLevel(char c) {
+		switch (c) {
+		case 'V':
+		case 'D':
+		case 'I':
+		case 'W':
+		case 'E':
+		case 'F':
+		case 'A':
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static int parsePid(String line, int start, int end) {
+		int pid = 0;
+		boolean digits = false;
+
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+
+			if (c >= '0' && c <= '9') {
+				pid = pid * 10 + (c - '0');
+				digits = true;
+			} else if (c != ' ') {
+				return -1;
+			}
+		}
+
+		return digits ? pid : -1;
+	}
+}
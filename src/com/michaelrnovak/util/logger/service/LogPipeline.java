@@ -0,0 +1,883 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Everything between the bytes coming off a LogSource and the sinks: parsing, stats,
+ * collapsing and rate limiting, the filter, the rings, the on-disk store with its
+ * search index and view, and the queries and export that read them back. None of it
+ * calls into Android: the only Android types it touches are Parcel and Parcelable,
+ * which LogEntry and the snapshots implement so the service can hand them out, and
+ * warnings go through warn(). So with android.jar on the classpath for those
+ * declarations it runs the same on a desktop JVM, against a ReplaySource or in the
+ * tests, as it does inside LogProcessor. Threads and lifecycles are up to the caller;
+ * each reader thread calls read() with its own Input.
+ *
+ * Entries move through under one delivery lock, which lock() hands out so the caller
+ * can line something of its own up with a filter switch.
+ *
+ * logcat starts every run by dumping its whole buffer, and dmesg is nothing but its
+ * buffer, so a restarted reader first goes over lines we already have. The last
+ * LINE_HISTORY lines read are remembered (seeded from the store when there is one, so
+ * this holds across the service going away too) and a new run drops lines that
+ * replay them; see replayed().
+ *
+ * It also keeps an eye on itself for getMetrics(): one line in PARSE_SAMPLE has its
+ * parse timed, every filter decision is counted, and the UI side reports its backlog
+ * and how late lines show up into histograms of their own.
+ */
+public class LogPipeline {
+	public static final int HISTORY_SCAN = 10000;
+	public static final int SEARCH_CHUNK = 256;
+	public static final int VIEW_LINES = 65536;
+	public static final int STATS_TOP = 10;
+	public static final int PARSE_SAMPLE = 16;
+	public static final int LINE_HISTORY = 16384;
+	public static final int REPLAY_MISSES = 16;
+	private final TagTable mTags = new TagTable();
+	private final LogParser mParser = new LogParser(mTags);
+	private final Object mDeliveryLock = new Object();
+	private final ViewIndex mView = new ViewIndex(VIEW_LINES);
+	private final LineThrottle mThrottle = new LineThrottle();
+	private final LogStats mStats = new LogStats();
+	private volatile LogFilter mFilter = LogFilter.NONE;
+	private volatile SegmentStore mStore;
+	private volatile SearchIndex mIndex;
+	private volatile ArrayList<LogSink> mSinks = new ArrayList<LogSink>();
+	private volatile ArrayList<Input> mInputs = new ArrayList<Input>();
+	private final Histogram mParseNanos = new Histogram();
+	private final Histogram mLagMillis = new Histogram();
+	private final Histogram mBacklog = new Histogram();
+	private final AtomicLong mPassed = new AtomicLong();
+	private final AtomicLong mRejected = new AtomicLong();
+	private final LineHistory mHistory = new LineHistory(LINE_HISTORY);
+
+	/*
+	 * One reader's side of the pipeline: its ring of recent lines and the run of
+	 * repeats it's collapsing. kill() makes read() return after the current line.
+	 */
+	public static class Input {
+		private final String mName;
+		private final LogRingBuffer<LogEntry> mRing;
+		private final boolean mBinary;
+		private volatile boolean mKill = false;
+		// the last line taken in and how often it has repeated since, delivery lock only.
+		private LogEntry mLast;
+		private int mRepeats = 0;
+		private long mRepeatTime;
+		private long mRepeatReceived;
+		// lines read, only for picking which to time.
+		private int mRead = 0;
+		// how far into the history this run's replay of old lines has got, reader only.
+		private long mReplayPos;
+		private long mReplayEnd;
+		private int mMisses;
+		private boolean mReplayFound;
+		private int mReplayHash;
+
+		public Input(String name, int lines, boolean binary) {
+			mName = name;
+			mRing = new LogRingBuffer<LogEntry>(lines);
+			mBinary = binary;
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		public boolean isKilled() {
+			return mKill;
+		}
+
+		public void kill() {
+			mKill = true;
+		}
+	}
+
+	/*
+	 * Keeps history in a SegmentStore under dir. Without one the rings are all there
+	 * is and paging, seeking and the index aren't available. The index starts out
+	 * covering only what comes in from now on; indexStore() takes care of what the
+	 * store already held.
+	 */
+	public void openStore(File dir) throws IOException {
+		SegmentStore store = new SegmentStore(dir, SegmentStore.DEFAULT_SEGMENT_SIZE,
+				SegmentStore.DEFAULT_MAX_SEGMENTS, new LogParser(mTags, false));
+		mIndex = new SearchIndex(store.nextSeq());
+		Iterator<LogEntry> lines = store.iterator(Math.max(store.firstSeq(), store.nextSeq() - LINE_HISTORY));
+
+		while (lines.hasNext()) {
+			mHistory.add(lines.next().line.hashCode());
+		}
+
+		mStore = store;
+	}
+
+	/*
+	 * Indexes what the store held when it was opened, so a search doesn't have to
+	 * read its way through all of that until it has rotated away. That means reading
+	 * the whole store, so it belongs on a worker thread. The new index is built from
+	 * the store without any lock while lines keep going into the old one, then under
+	 * the delivery lock it catches up on what was stored meanwhile and takes over.
+	 */
+	public void indexStore() {
+		SegmentStore store = mStore;
+
+		if (store == null) {
+			return;
+		}
+
+		long next = store.firstSeq();
+		SearchIndex index = new SearchIndex(next);
+		ArrayList<LogEntry> chunk = new ArrayList<LogEntry>(SEARCH_CHUNK);
+
+		// caught up once a chunk comes back short, the rest is done under the lock.
+		do {
+			if (mStore != store) {
+				return;
+			}
+
+			chunk.clear();
+			next = index(store, index, next, chunk);
+		} while (chunk.size() == SEARCH_CHUNK);
+
+		synchronized (mDeliveryLock) {
+			if (mStore != store || mIndex == null) {
+				return;
+			}
+
+			do {
+				chunk.clear();
+				next = index(store, index, next, chunk);
+			} while (chunk.size() > 0);
+
+			index.evict(store.firstSeq());
+			mIndex = index;
+		}
+	}
+
+	private static long index(SegmentStore store, SearchIndex index, long from, List<LogEntry> chunk) {
+		long next = store.read(from, SEARCH_CHUNK, chunk);
+
+		for (int i = 0; i < chunk.size(); i++) {
+			index.add(chunk.get(i).seq, chunk.get(i));
+		}
+
+		return next;
+	}
+
+	/*
+	 * Closes the sinks and the store.
+	 */
+	public void close() {
+		synchronized (mDeliveryLock) {
+			for (int i = 0; i < mSinks.size(); i++) {
+				mSinks.get(i).close();
+			}
+
+			mSinks = new ArrayList<LogSink>();
+		}
+
+		SegmentStore store = mStore;
+
+		if (store != null) {
+			store.close();
+		}
+	}
+
+	public Object lock() {
+		return mDeliveryLock;
+	}
+
+	public TagTable getTags() {
+		return mTags;
+	}
+
+	public LineThrottle getThrottle() {
+		return mThrottle;
+	}
+
+	public StatsSnapshot getStats(int seconds) {
+		return mStats.snapshot(seconds, STATS_TOP, System.currentTimeMillis(), mTags);
+	}
+
+	/*
+	 * Where whoever feeds the UI records its backlog.
+	 */
+	public Histogram getBacklog() {
+		return mBacklog;
+	}
+
+	/*
+	 * Notes that the list has just shown a batch whose oldest line was read at time.
+	 */
+	public void shown(long time) {
+		mLagMillis.record(System.currentTimeMillis() - time);
+	}
+
+	/*
+	 * The pipeline's own numbers, with uiDropped lines lost on the way to the UI
+	 * counted by the caller.
+	 */
+	public MetricsSnapshot getMetrics(long uiDropped) {
+		long now = System.currentTimeMillis();
+		StatsSnapshot stats = mStats.snapshot(MetricsSnapshot.RATE_SECONDS, 0, now, mTags);
+		int[] counts = mThrottle.getSuppressedCounts();
+		ArrayList<LogSink> sinks = mSinks;
+		long suppressed = 0;
+		long sinkDropped = 0;
+
+		for (int i = 0; i < counts.length; i++) {
+			suppressed += counts[i];
+		}
+
+		for (int i = 0; i < sinks.size(); i++) {
+			if (sinks.get(i) instanceof StreamSink) {
+				sinkDropped += ((StreamSink) sinks.get(i)).getDropped();
+			}
+		}
+
+		return new MetricsSnapshot(stats.lines / stats.seconds, (int) (stats.bytes / stats.seconds), mPassed.get(),
+				mRejected.get(), suppressed, uiDropped, sinkDropped, percentiles(mParseNanos), percentiles(mLagMillis),
+				percentiles(mBacklog));
+	}
+
+	private static long[] percentiles(Histogram histogram) {
+		long[] out = new long[MetricsSnapshot.PERCENTILES.length];
+		histogram.percentiles(MetricsSnapshot.PERCENTILES, out);
+		return out;
+	}
+
+	/*
+	 * Replaces the readers whose rings make up the in-memory scrollback.
+	 */
+	public void setInputs(ArrayList<Input> inputs) {
+		synchronized (mDeliveryLock) {
+			mInputs = inputs;
+		}
+	}
+
+	/*
+	 * Reads a whole source through, then closes it. For callers that don't need to
+	 * tell a source that won't open from one that fails halfway.
+	 */
+	public void read(Input input, LogSource source) throws IOException {
+		try {
+			read(input, source.open());
+		} finally {
+			source.close();
+		}
+	}
+
+	/*
+	 * Reads in until the stream ends or input is killed. The stream is closed either
+	 * way.
+	 */
+	public void read(Input input, InputStream in) throws IOException {
+		input.mReplayPos = mHistory.start();
+		input.mReplayEnd = mHistory.end();
+		input.mMisses = 0;
+		input.mReplayFound = false;
+
+		try {
+			if (input.mBinary) {
+				readBinary(input, in);
+			} else {
+				readText(input, in);
+			}
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				warn("Error closing the log stream: " + e.toString());
+			}
+		}
+	}
+
+	private void readText(Input input, InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		String line;
+
+		while (!input.mKill) {
+			line = reader.readLine();
+
+			if (line == null) {
+				break;
+			} else if (replayed(input, line)) {
+				continue;
+			}
+
+			long now = System.currentTimeMillis();
+			LogEntry entry;
+
+			if (++input.mRead % PARSE_SAMPLE == 0) {
+				long start = System.nanoTime();
+				entry = mParser.parse(line, now);
+				mParseNanos.record(System.nanoTime() - start);
+			} else {
+				entry = mParser.parse(line, now);
+			}
+
+			mStats.record(entry.level, entry.tagId, entry.pid, Utf8.length(line, entry.msgStart, line.length()),
+					now);
+
+			synchronized (mDeliveryLock) {
+				// killed while reading the line, it belongs to a run that's been replaced.
+				if (!input.mKill) {
+					ingest(input, entry);
+				}
+			}
+		}
+
+		if (!input.mKill) {
+			synchronized (mDeliveryLock) {
+				flushRepeats(input);
+			}
+		}
+	}
+
+	/*
+	 * Binary mode checks the header fields against the filter before any text is
+	 * built, and a record that fails is dropped right there. That's the whole point
+	 * of the mode, but it also means the scrollback only holds what matched, so a
+	 * later filter change can't bring those lines back. Replays are only spotted once
+	 * there's text, so a restart counts its backlog in the stats a second time.
+	 */
+	private void readBinary(Input input, InputStream in) throws IOException {
+		BinaryLogDecoder decoder = new BinaryLogDecoder(in, mTags);
+
+		while (!input.mKill && decoder.next()) {
+			LogFilter filter = mFilter;
+			mStats.record(decoder.getLevel(), decoder.getTagId(), decoder.getPid(), decoder.getMessageLength(),
+					System.currentTimeMillis());
+
+			if (!filter.matchesHeader(decoder.getLevel(), decoder.getTagId(), decoder.getPid())) {
+				mRejected.incrementAndGet();
+				continue;
+			}
+
+			LogEntry entry;
+
+			if (++input.mRead % PARSE_SAMPLE == 0) {
+				long start = System.nanoTime();
+				entry = decoder.toEntry();
+				mParseNanos.record(System.nanoTime() - start);
+			} else {
+				entry = decoder.toEntry();
+			}
+
+			if (replayed(input, entry.line)) {
+				continue;
+			}
+
+			synchronized (mDeliveryLock) {
+				if (input.mKill) {
+					break;
+				} else if (mFilter.matches(entry)) {
+					ingest(input, entry);
+				} else {
+					mRejected.incrementAndGet();
+				}
+			}
+		}
+
+		if (!input.mKill) {
+			synchronized (mDeliveryLock) {
+				flushRepeats(input);
+			}
+		}
+	}
+
+	/*
+	 * Whether line is one this input's source already gave us on an earlier run. The
+	 * replayed lines are a run of what's in the history, in order but with other
+	 * buffers' lines in between, so each is looked for past the last one found.
+	 * Catching up is over once the end of the history as it stood at the start of the
+	 * run is reached, or once REPLAY_MISSES lines haven't been found in it.
+	 *
+	 * When the history was seeded from the store it only has what the store kept: a
+	 * burst of identical lines is a single "repeated" line there, and rate limited
+	 * lines aren't there at all. So a copy of the line just found counts as replayed
+	 * without moving on, which takes care of the bursts; lines the limiter dropped
+	 * still cost a miss each. After a reboot, or a buffer that has rolled past
+	 * everything remembered, it's all misses, and the few lines that happen to match
+	 * something old before the budget runs out are the price. Anything not replayed
+	 * is added to the history.
+	 */
+	private boolean replayed(Input input, String line) {
+		int hash = line.hashCode();
+
+		if (input.mReplayPos < input.mReplayEnd) {
+			if (input.mReplayFound && hash == input.mReplayHash) {
+				return true;
+			}
+
+			long found = mHistory.find(hash, input.mReplayPos, input.mReplayEnd);
+
+			if (found >= 0) {
+				input.mReplayPos = found + 1;
+				input.mReplayFound = true;
+				input.mReplayHash = hash;
+				return true;
+			} else if (++input.mMisses >= REPLAY_MISSES) {
+				input.mReplayPos = input.mReplayEnd;
+			}
+		}
+
+		mHistory.add(hash);
+		return false;
+	}
+
+	/*
+	 * The ingest stage, with the delivery lock held. A line identical to the one
+	 * before it from the same reader is only counted; when the run ends a single
+	 * "repeated" entry stands in for all the copies. Lines over their tag's rate limit
+	 * are dropped. Either way they never reach the scrollback, the store or the UI.
+	 * A run still going when the reader goes quiet is only reported once the next
+	 * different line comes in.
+	 */
+	private void ingest(Input input, LogEntry entry) {
+		LogEntry last = input.mLast;
+
+		if (last != null && last.line.equals(entry.line)) {
+			input.mRepeats++;
+			input.mRepeatTime = entry.time;
+			input.mRepeatReceived = entry.received;
+			mThrottle.suppressed(entry);
+			return;
+		}
+
+		flushRepeats(input);
+		input.mLast = entry;
+
+		if (mThrottle.admit(entry, entry.time)) {
+			accept(input, entry);
+		}
+	}
+
+	private void flushRepeats(Input input) {
+		if (input.mRepeats == 0) {
+			return;
+		}
+
+		LogEntry last = input.mLast;
+		String line = last.line.substring(0, last.msgStart) + "last message repeated " + input.mRepeats + " times";
+		input.mRepeats = 0;
+		LogEntry repeated = new LogEntry(line, last.level, last.tag, last.tagId, last.pid, last.headerEnd,
+				last.msgStart, input.mRepeatTime);
+		repeated.received = input.mRepeatReceived;
+		accept(input, repeated);
+	}
+
+	private void accept(Input input, LogEntry entry) {
+		input.mRing.add(entry);
+		store(entry);
+
+		if (mFilter.matches(entry)) {
+			mPassed.incrementAndGet();
+			deliver(entry);
+		} else {
+			mRejected.incrementAndGet();
+		}
+	}
+
+	/*
+	 * Appends to the on-disk store and indexes the entry for searching. Called with
+	 * the delivery lock held. If the store fails we drop it and carry on with the
+	 * rings alone.
+	 */
+	private void store(LogEntry entry) {
+		if (mStore == null) {
+			return;
+		}
+
+		try {
+			long seq = mStore.append(entry);
+			long first = mStore.firstSeq();
+			mIndex.add(seq, entry);
+			mIndex.evict(first);
+			mView.evict(first);
+		} catch (IOException e) {
+			// only a failed mapping gets here, anything the store can't take whole it cuts down.
+			warn("Log store failed, keeping history in memory only: " + e.toString());
+			mIndex = null;
+			mStore = null;
+		}
+	}
+
+	/*
+	 * Hands a matching entry to every sink. Called with the delivery lock held.
+	 * Stored entries also go into the view the list pages through.
+	 */
+	private void deliver(LogEntry entry) {
+		ArrayList<LogSink> sinks = mSinks;
+
+		for (int i = 0; i < sinks.size(); i++) {
+			sinks.get(i).publish(entry);
+		}
+
+		if (entry.seq != LogEntry.NO_SEQ) {
+			mView.add(entry.seq);
+		}
+	}
+
+	/*
+	 * Swaps sink in for old (either may be null), closing old and starting sink. The
+	 * list is copied rather than changed so delivery never sees it half updated.
+	 */
+	public void replaceSink(LogSink old, LogSink sink) {
+		synchronized (mDeliveryLock) {
+			ArrayList<LogSink> sinks = new ArrayList<LogSink>(mSinks);
+
+			if (old != null) {
+				sinks.remove(old);
+				old.close();
+			}
+
+			if (sink != null) {
+				sinks.add(sink);
+			}
+
+			mSinks = sinks;
+		}
+
+		if (sink instanceof StreamSink) {
+			((StreamSink) sink).start();
+		}
+	}
+
+	/*
+	 * Hears about a filter switch the moment it happens, with the delivery lock still
+	 * held, so nothing delivered under the new filter can get ahead of it. With a
+	 * store matches is null and the view has been rebuilt; without one it's the
+	 * matching ring entries.
+	 */
+	public interface FilterListener {
+		void filterChanged(List<LogEntry> matches);
+	}
+
+	/*
+	 * Swaps in a new filter and re-runs it over the retained history, then tells
+	 * listener (which may be null). With a store, the last HISTORY_SCAN stored entries
+	 * are scanned before the lock is taken, lines keep coming in under the old filter
+	 * meanwhile; under the lock only what was stored during the scan is left to look
+	 * at before the view is rebuilt. Without a store the rings are small enough to go
+	 * over with the lock held. Either way this can take a while, so it belongs on a
+	 * worker thread.
+	 */
+	public void setFilter(LogFilter filter, FilterListener listener) {
+		SegmentStore store = mStore;
+		long[] seqs = null;
+		int n = 0;
+		long end = 0;
+
+		if (store != null) {
+			end = store.nextSeq();
+			seqs = new long[HISTORY_SCAN];
+			Iterator<LogEntry> lines = store.iterator(Math.max(store.firstSeq(), end - HISTORY_SCAN));
+
+			while (lines.hasNext()) {
+				LogEntry entry = lines.next();
+
+				if (entry.seq >= end) {
+					break;
+				} else if (filter.matches(entry)) {
+					seqs[n++] = entry.seq;
+				}
+			}
+		}
+
+		synchronized (mDeliveryLock) {
+			List<LogEntry> matches = null;
+			mFilter = filter;
+
+			// the store may have failed while we were scanning it.
+			if (store != null && mStore == store) {
+				fillView(store, filter, seqs, n, end);
+			} else {
+				matches = recentMatches(filter);
+			}
+
+			if (listener != null) {
+				listener.filterChanged(matches);
+			}
+		}
+	}
+
+	/*
+	 * Refills the view with the n matching sequence numbers found before end, then
+	 * the matching entries stored since. Called with the delivery lock held.
+	 */
+	private void fillView(SegmentStore store, LogFilter filter, long[] seqs, int n, long end) {
+		mView.clear();
+
+		for (int i = 0; i < n; i++) {
+			mView.add(seqs[i]);
+		}
+
+		Iterator<LogEntry> lines = store.iterator(end);
+
+		while (lines.hasNext()) {
+			LogEntry entry = lines.next();
+
+			if (filter.matches(entry)) {
+				mView.add(entry.seq);
+			}
+		}
+
+		mView.evict(store.firstSeq());
+	}
+
+	/*
+	 * The last lines in the rings matching filter, as many as a single ring holds, for
+	 * when there's no store to page through.
+	 */
+	private List<LogEntry> recentMatches(LogFilter filter) {
+		List<LogEntry> lines = mergedSnapshot();
+		ArrayList<Input> inputs = mInputs;
+		LogRingBuffer<LogEntry> recent = new LogRingBuffer<LogEntry>(inputs.size() == 0 ? 1
+				: inputs.get(0).mRing.capacity());
+
+		for (int i = 0; i < lines.size(); i++) {
+			if (filter.matches(lines.get(i))) {
+				recent.add(lines.get(i));
+			}
+		}
+
+		return recent.snapshot();
+	}
+
+	/*
+	 * Every ring merged into one timeline. The readers keep their scrollback after
+	 * they've stopped, so this still works once a dmesg run has finished.
+	 */
+	public List<LogEntry> mergedSnapshot() {
+		ArrayList<Input> inputs = mInputs;
+		ArrayList<LogRingBuffer<LogEntry>> rings = new ArrayList<LogRingBuffer<LogEntry>>(inputs.size());
+
+		for (int i = 0; i < inputs.size(); i++) {
+			rings.add(inputs.get(i).mRing);
+		}
+
+		return LogMerger.merge(rings);
+	}
+
+	/*
+	 * The first and end view positions, or null without a store.
+	 */
+	public long[] getLineRange() {
+		return mStore == null ? null : new long[] { mView.first(), mView.end() };
+	}
+
+	public long seek(long time) {
+		SegmentStore store = mStore;
+		return store == null ? -1 : store.seek(time);
+	}
+
+	/*
+	 * The entries at view positions from to from + count - 1, read from the store a
+	 * run of consecutive sequence numbers at a time. Lines that have been rotated away
+	 * come back as null so the positions still line up.
+	 */
+	public List<LogEntry> page(long from, int count) {
+		ArrayList<LogEntry> out = new ArrayList<LogEntry>(count);
+		SegmentStore store = mStore;
+
+		if (store == null) {
+			return out;
+		}
+
+		long[] seqs = new long[count];
+		int n = mView.get(from, seqs);
+		ArrayList<LogEntry> run = new ArrayList<LogEntry>(count);
+
+		for (int i = 0; i < n; i++) {
+			out.add(null);
+		}
+
+		for (int i = 0; i < n;) {
+			if (seqs[i] == LogEntry.NO_SEQ) {
+				i++;
+				continue;
+			}
+
+			int j = i + 1;
+
+			while (j < n && seqs[j] == seqs[j - 1] + 1) {
+				j++;
+			}
+
+			run.clear();
+			store.read(seqs[i], j - i, run);
+
+			for (int k = 0; k < run.size(); k++) {
+				long offset = run.get(k).seq - seqs[i];
+
+				if (offset >= 0 && offset < j - i) {
+					out.set(i + (int) offset, run.get(k));
+				}
+			}
+
+			i = j;
+		}
+
+		return out;
+	}
+
+	/*
+	 * A page of up to max entries containing query (ignoring case), newest first,
+	 * starting below sequence number before; pass the seq of the last entry of a page
+	 * to get the next one. The index narrows the store down to a few candidates; lines
+	 * older than the index (left from an earlier run) are walked back a chunk at a
+	 * time. Without a store the rings are searched and come back as a single page.
+	 */
+	public List<LogEntry> search(String query, long before, int max) {
+		ArrayList<LogEntry> out = new ArrayList<LogEntry>();
+		String needle = query.toLowerCase();
+		SegmentStore store = mStore;
+		SearchIndex index = mIndex;
+
+		if (needle.length() == 0) {
+			return out;
+		}
+
+		if (store == null || index == null) {
+			if (before == Long.MAX_VALUE) {
+				List<LogEntry> lines = mergedSnapshot();
+
+				for (int i = lines.size() - 1; i >= 0 && out.size() < max; i--) {
+					if (lines.get(i).line.toLowerCase().indexOf(needle) >= 0) {
+						out.add(lines.get(i));
+					}
+				}
+			}
+
+			return out;
+		}
+
+		ArrayList<LogEntry> chunk = new ArrayList<LogEntry>(SEARCH_CHUNK);
+		long indexed = index.first();
+		long[] seqs = index.candidates(needle);
+		before = Math.min(before, store.nextSeq());
+
+		if (seqs != null) {
+			int i = Arrays.binarySearch(seqs, before);
+			i = (i < 0 ? -i - 1 : i) - 1;
+
+			for (; i >= 0 && out.size() < max; i--) {
+				chunk.clear();
+				store.read(seqs[i], 1, chunk);
+
+				if (chunk.size() == 1 && chunk.get(0).seq == seqs[i]
+						&& chunk.get(0).line.toLowerCase().indexOf(needle) >= 0) {
+					out.add(chunk.get(0));
+				}
+			}
+
+			before = Math.min(before, indexed);
+		}
+
+		long first = store.firstSeq();
+
+		while (before > first && out.size() < max) {
+			long from = Math.max(first, before - SEARCH_CHUNK);
+			chunk.clear();
+			store.read(from, (int) (before - from), chunk);
+
+			for (int i = chunk.size() - 1; i >= 0 && out.size() < max; i--) {
+				if (chunk.get(i).line.toLowerCase().indexOf(needle) >= 0) {
+					out.add(chunk.get(i));
+				}
+			}
+
+			before = from;
+		}
+
+		return out;
+	}
+
+	/*
+	 * Up to max entries matching the current filter that were received in
+	 * [fromTime, toTime). The store finds the start through its index; the rings are
+	 * only a few thousand lines, so without a store they're just walked, all the way
+	 * since their merge goes by record time rather than received time.
+	 */
+	public List<LogEntry> window(long fromTime, long toTime, int max) {
+		ArrayList<LogEntry> out = new ArrayList<LogEntry>();
+		SegmentStore store = mStore;
+		LogFilter filter = mFilter;
+		Iterator<LogEntry> lines;
+
+		if (store != null) {
+			lines = store.iterator(store.seek(fromTime));
+		} else {
+			lines = mergedSnapshot().iterator();
+		}
+
+		while (lines.hasNext() && out.size() < max) {
+			LogEntry entry = lines.next();
+
+			if (entry.received >= toTime && store != null) {
+				break;
+			}
+
+			if (entry.received >= fromTime && entry.received < toTime && filter.matches(entry)) {
+				out.add(entry);
+			}
+		}
+
+		return out;
+	}
+
+	/*
+	 * Exports stream straight out of the store so the whole history never has to be
+	 * on the heap at once; without a store they fall back to the rings.
+	 */
+	public int export(LogExporter exporter, int filterId, WritableByteChannel out, LogExporter.Progress progress)
+			throws IOException {
+		SegmentStore store = mStore;
+
+		if (store != null) {
+			long first = store.firstSeq();
+			int total = (int) (store.nextSeq() - first);
+			return exporter.export(store.iterator(first), total, mFilter, filterId, out, progress);
+		}
+
+		return exporter.export(mergedSnapshot(), mFilter, filterId, out, progress);
+	}
+
+	/*
+	 * Reports trouble the pipeline carries on through. LogProcessor sends it to the
+	 * Android log.
+	 */
+	protected void warn(String message) {
+		System.err.println(message);
+	}
+}
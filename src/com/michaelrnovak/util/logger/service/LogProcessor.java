@@ -17,41 +17,165 @@
  */
 package com.michaelrnovak.util.logger.service;
 
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
 import android.os.IBinder;
 import android.os.Handler;
 import android.os.Message;
+import android.os.RemoteException;
 import android.util.Log;
 
-import java.io.BufferedReader;
+import com.michaelrnovak.util.logger.Logger;
+import com.michaelrnovak.util.logger.R;
+
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Vector;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
+/*
+ * Everything that starts or stops readers or outputs (run, reset, the buffer and
+ * mode switches, stop) is queued to a single command thread and done in order, so
+ * two calls can't race each other into running two readers on one buffer, and the
+ * binder call returns without waiting on old readers to die. Readers run on pooled
+ * threads that outlive any one run, and the pool also indexes the store left over
+ * from before the service started. Exports go through their own single thread
+ * with room for one more waiting. The reader and output settings belong to the
+ * command thread, which is the only one to change them; the getters just read
+ * them. A filter change is queued there too, since going back over the
+ * stored history for it is too slow for the caller's thread.
+ *
+ * Normally the service lives only as long as the activity is bound. In background
+ * mode it also starts itself and goes foreground, so it keeps capturing into the
+ * store while nobody is bound; the UI batcher is let go in the meantime, and the
+ * list picks up where it was when the activity comes back.
+ *
+ * The activity's handler is static so the activity can hand it over before it has
+ * the binder. It's cleared on unbind, and anything sent while nobody is bound is
+ * dropped rather than left to a handler whose activity is gone.
+ */
 public class LogProcessor extends Service {
 	
-	private static Handler mHandler;
-	private String mFile;
-	private String mBuffer = "main";
-	private Vector<String> mScrollback;
-	private int mLines;
-	private int mType;
-	private String mFilterTag;
-	private volatile boolean threadKill = false;
-	private volatile boolean mStatus = false;
+	private static volatile Handler mHandler;
+	private volatile String[] mBuffers = {"main"};
+	private volatile LogBatcher<LogEntry> mBatcher;
+	// UI drops counted by batchers since replaced, delivery lock only.
+	private long mRetiredDrops = 0;
+	private final LogPipeline mPipeline = new LogPipeline() {
+		@Override
+		protected void warn(String message) {
+			Log.e("Logger", message);
+		}
+	};
+	private volatile int mType;
+	private boolean mBinary = false;
+	private StreamSink mFileSink;
+	private StreamSink mSocketSink;
+	private volatile String mFileOutput;
+	private volatile String mSocketOutput;
+	// as last set, for an activity coming back to a service that kept running.
+	private volatile int mRateLimit = LineThrottle.UNLIMITED;
+	private volatile char mFilterLevel = LogFilter.LEVEL_ALL;
+	private volatile String[] mIncludeTags;
+	private volatile String[] mExcludeTags;
+	private volatile LogExporter mExporter;
+	private volatile int mState = STATE_STOPPED;
+	private volatile boolean mBackground = false;
+	private Method mStartForeground;
+	private Method mStopForeground;
+	private ArrayList<ReaderTask> mReaders = new ArrayList<ReaderTask>();
+	private CountDownLatch mReadersDone;
+	private final ExecutorService mCommands = Executors.newSingleThreadExecutor(new NamedThreads("LogCommand"));
+	private final ExecutorService mReaderPool = Executors.newCachedThreadPool(new NamedThreads("LogReader"));
+	private final ExecutorService mExports = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(EXPORT_QUEUE), new NamedThreads("LogExport"));
 	public int MAX_LINES = 250;
+	public static final long STOP_TIMEOUT = 2000;
+	public static final int EXPORT_QUEUE = 1;
+	public static final int NOTE_CAPTURE = 1;
+	private static final Class<?>[] START_FOREGROUND = { int.class, Notification.class };
+	private static final Class<?>[] STOP_FOREGROUND = { boolean.class };
+	public static final int STATE_STOPPED = 0;
+	public static final int STATE_RUNNING = 1;
+	public static final int STATE_STOPPING = 2;
+	public static final int STATE_FAILED = 3;
 	public static final int MSG_READ_FAIL = 1;
 	public static final int MSG_LOG_FAIL = 2;
-	public static final int MSG_NEW_LINE = 3;
 	public static final int MSG_RESET_LOG = 4;
 	public static final int MSG_LOG_SAVE = 5;
+	public static final int MSG_NEW_LINES = 6;
+	public static final int MSG_LOG_PROGRESS = 7;
+	public static final String ATTACHMENT_FILE = "tmp.log.gz";
 	
 	@Override
 	public void onCreate() {
 		super.onCreate();
+		
+		// 2.0 made setForeground() a no-op in favour of these, which 1.5 and 1.6 don't have.
+		try {
+			mStartForeground = getClass().getMethod("startForeground", START_FOREGROUND);
+			mStopForeground = getClass().getMethod("stopForeground", STOP_FOREGROUND);
+		} catch (NoSuchMethodException e) {
+			mStartForeground = null;
+			mStopForeground = null;
+		}
+		
+		try {
+			mPipeline.openStore(new File(getFilesDir(), "log"));
+			mReaderPool.execute(new Runnable() {
+				public void run() {
+					mPipeline.indexStore();
+				}
+			});
+		} catch (IOException e) {
+			Log.e("Logger", "Can't open the log store, keeping history in memory only: " + e.toString());
+		}
+	}
+	
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
+		setHandler(null);
+		command(new Runnable() {
+			public void run() {
+				background(false);
+				stopReaders();
+			}
+		});
+		mCommands.shutdown();
+		mExports.shutdown();
+		cancelExport();
+		
+		try {
+			// anything still queued may start readers, so the pool has to wait for it.
+			mCommands.awaitTermination(STOP_TIMEOUT * 2, TimeUnit.MILLISECONDS);
+			mExports.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		mReaderPool.shutdown();
+		mPipeline.close();
 	}
 	
 	@Override
@@ -60,80 +184,327 @@ public class LogProcessor extends Service {
 		Log.i("Logger", "Logger Service has hit the onStart method.");
 	}
 
-	Runnable worker = new Runnable() {
-		public void run() {
-			runLog();
-			mStatus = true;
-			Log.d("Logger", "status... " + mStatus);
-			return;
+	private static class NamedThreads implements ThreadFactory {
+		private final String mName;
+		private final AtomicInteger mCount = new AtomicInteger();
+		
+		NamedThreads(String name) {
+			mName = name;
 		}
-	};
-	
-	private void runLog() {
-		Process process = null;
 		
-		try {
+		public Thread newThread(Runnable r) {
+			return new Thread(r, mName + "-" + mCount.incrementAndGet());
+		}
+	}
+	
+	/*
+	 * One run of a reader against one source. Each run owns its kill flag and source
+	 * so that a reader which was slow to die can never be revived by the next run
+	 * clearing a shared flag. done is counted down by every reader of the same run.
+	 */
+	private class ReaderTask implements Runnable {
+		private final LogPipeline.Input mInput;
+		private final LogSource mSource;
+		private final CountDownLatch mDone;
+
+		ReaderTask(LogPipeline.Input input, LogSource source, CountDownLatch done) {
+			mInput = input;
+			mSource = source;
+			mDone = done;
+		}
+
+		public void run() {
+			String name = Thread.currentThread().getName();
+			Thread.currentThread().setName("LogReader-" + mInput.getName());
 			
-			if (mType == 0) {
-				process = Runtime.getRuntime().exec("/system/bin/logcat -b " + mBuffer);
-			} else if (mType == 1) {
-				process = Runtime.getRuntime().exec("dmesg -s 1000000");
+			try {
+				runLog(this);
+			} finally {
+				Thread.currentThread().setName(name);
 			}
 			
+			Log.d("Logger", "Reader thread finished");
+		}
+
+		void kill() {
+			mInput.kill();
+			mSource.close();
+		}
+	}
+	
+	/*
+	 * Runs command on the command thread, after everything queued before it.
+	 */
+	private void command(Runnable command) {
+		try {
+			mCommands.execute(command);
+		} catch (RejectedExecutionException e) {
+			Log.w("Logger", "Service is shutting down, command dropped");
+		}
+	}
+	
+	private void runLog(ReaderTask task) {
+		InputStream in;
+		
+		try {
+			in = task.mSource.open();
 		} catch (IOException e) {
 			communicate(MSG_LOG_FAIL);
+			readerExited(task, STATE_FAILED);
+			return;
 		}
 		
-		BufferedReader reader = null;
-		
 		try {
-			reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			mPipeline.read(task.mInput, in);
+			LogBatcher<LogEntry> out = mBatcher;
 			
-			String line;
-			
-			while (!killRequested()) {
-				line = reader.readLine();
-				
-				logLine(line);
-				
-				if (mLines == MAX_LINES) {
-					mScrollback.removeElementAt(0);
-				}
-				
-				mScrollback.add(line);
-				mLines++;
+			if (!task.mInput.isKilled() && out != null) {
+				out.flush();
 			}
-			
-			Log.i("Logger", "Prepping thread for termination");
-			reader.close();
-			process.destroy();
-			process = null;
-			reader = null;
-			mScrollback.removeAllElements();
-			mScrollback = null;
-			mLines = 0;
 		} catch (IOException e) {
-			communicate(MSG_READ_FAIL);
+			// closing the source to stop us closes the stream under the read.
+			if (!task.mInput.isKilled()) {
+				communicate(MSG_READ_FAIL);
+			}
+		} finally {
+			Log.i("Logger", "Prepping thread for termination");
+			task.mSource.close();
+			readerExited(task, STATE_STOPPED);
 		}
 		
 		Log.d("Logger", "Exiting thread...");
 		return;
 	}
 	
-	private synchronized void requestKill() {
-		threadKill = true;
+	private void readerExited(ReaderTask task, int state) {
+		task.mDone.countDown();
+		
+		if (task.mDone.getCount() == 0 && !task.mInput.isKilled()) {
+			mState = state;
+		}
+	}
+	
+	/*
+	 * Starts one reader per selected buffer (dmesg only ever gets one), stopping the
+	 * old ones first so there's never more than one per source. All of them feed the
+	 * same batcher, each into its own ring. Command thread only.
+	 */
+	private void startReaders() {
+		stopReaders();
+		
+		String[] buffers = mType == 0 ? mBuffers : new String[] { "kernel" };
+		ArrayList<ReaderTask> readers = new ArrayList<ReaderTask>(buffers.length);
+		ArrayList<LogPipeline.Input> inputs = new ArrayList<LogPipeline.Input>(buffers.length);
+		CountDownLatch done = new CountDownLatch(buffers.length);
+		
+		synchronized (mPipeline.lock()) {
+			attachBatcher();
+			
+			for (int i = 0; i < buffers.length; i++) {
+				// the events buffer has a binary payload of its own, keep that one in text.
+				boolean binary = mBinary && mType == 0 && !buffers[i].equals("events");
+				LogPipeline.Input input = new LogPipeline.Input(buffers[i], MAX_LINES, binary);
+				LogSource source = mType == 0 ? ProcessSource.logcat(buffers[i], binary) : ProcessSource.dmesg();
+				inputs.add(input);
+				readers.add(new ReaderTask(input, source, done));
+			}
+			
+			mPipeline.setInputs(inputs);
+		}
+		
+		mReaders = readers;
+		mReadersDone = done;
+		mState = STATE_RUNNING;
+		
+		for (int i = 0; i < readers.size(); i++) {
+			mReaderPool.execute(readers.get(i));
+		}
+	}
+	
+	/*
+	 * Points delivery at a new batcher for the current handler, leaving the readers
+	 * alone. With no handler there's nobody to deliver to.
+	 */
+	private void attachBatcher() {
+		Handler handler = mHandler;
+		
+		if (handler == null) {
+			detachBatcher();
+			return;
+		}
+		
+		synchronized (mPipeline.lock()) {
+			LogBatcher<LogEntry> old = mBatcher;
+			mBatcher = new LogBatcher<LogEntry>(handler, MSG_NEW_LINES, mPipeline.getBacklog());
+			mPipeline.replaceSink(old, mBatcher);
+			
+			if (old != null) {
+				mRetiredDrops += old.getDropped();
+			}
+		}
 	}
 	
-	private synchronized boolean killRequested() {
-		return threadKill;
+	/*
+	 * Stops delivering to the UI, for while nobody's bound.
+	 */
+	private void detachBatcher() {
+		synchronized (mPipeline.lock()) {
+			if (mBatcher != null) {
+				mPipeline.replaceSink(mBatcher, null);
+				mRetiredDrops += mBatcher.getDropped();
+				mBatcher = null;
+			}
+		}
+	}
+	
+	/*
+	 * Switches background mode. Starting ourselves keeps the service alive past the
+	 * last unbind, going foreground keeps it from being the first thing killed for
+	 * memory, and the ongoing notification says why it's still running. Going
+	 * foreground is startForeground() where there is one and setForeground() before
+	 * 2.0. Command thread only.
+	 */
+	private void background(boolean background) {
+		if (background == mBackground) {
+			return;
+		}
+		
+		mBackground = background;
+		NotificationManager notes = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+		
+		if (background) {
+			startService(new Intent(this, LogProcessor.class));
+			Notification note = new Notification(R.drawable.icon, "Logger is capturing in the background",
+					System.currentTimeMillis());
+			note.flags |= Notification.FLAG_ONGOING_EVENT | Notification.FLAG_NO_CLEAR;
+			PendingIntent open = PendingIntent.getActivity(this, 0, new Intent(this, Logger.class), 0);
+			note.setLatestEventInfo(this, "Logger", "Capturing the log in the background", open);
+			
+			if (mStartForeground != null) {
+				invoke(mStartForeground, Integer.valueOf(NOTE_CAPTURE), note);
+			} else {
+				notes.notify(NOTE_CAPTURE, note);
+				setForeground(true);
+			}
+		} else {
+			if (mStopForeground != null) {
+				// takes the notification down with it.
+				invoke(mStopForeground, Boolean.TRUE);
+			} else {
+				setForeground(false);
+				notes.cancel(NOTE_CAPTURE);
+			}
+			
+			// only undoes the start; while bound the service stays.
+			stopSelf();
+		}
+	}
+	
+	private void invoke(Method method, Object... args) {
+		try {
+			method.invoke(this, args);
+		} catch (InvocationTargetException e) {
+			Log.w("Logger", "Unable to invoke " + method.getName() + ": " + e.getCause());
+		} catch (IllegalAccessException e) {
+			Log.w("Logger", "Unable to invoke " + method.getName() + ": " + e.toString());
+		}
+	}
+	
+	/*
+	 * Stops the readers and waits (a bounded amount of time, for all of them
+	 * together) for them to exit. readLine() can't be interrupted, so each source is
+	 * closed out from under the reader. One that still hasn't gone when time is up
+	 * has been killed all the same and won't get another line in. Command thread only.
+	 */
+	private void stopReaders() {
+		ArrayList<ReaderTask> readers = mReaders;
+		CountDownLatch done = mReadersDone;
+		
+		if (done == null) {
+			return;
+		}
+		
+		mState = STATE_STOPPING;
+		
+		for (int i = 0; i < readers.size(); i++) {
+			readers.get(i).kill();
+		}
+		
+		try {
+			if (!done.await(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				Log.w("Logger", done.getCount() + " readers did not stop within " + STOP_TIMEOUT + "ms");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		mReadersDone = null;
+		mState = STATE_STOPPED;
+	}
+	
+	/*
+	 * Picks the buffers to follow. Running readers are only restarted when the
+	 * selection actually changed; if nothing is running this just records it for the
+	 * next run. Command thread only.
+	 */
+	private void selectBuffers(String[] buffers) {
+		String[] selected = new String[buffers.length];
+		
+		for (int i = 0; i < buffers.length; i++) {
+			selected[i] = buffers[i].toLowerCase();
+		}
+		
+		Arrays.sort(selected);
+		
+		if (!Arrays.equals(selected, mBuffers)) {
+			mBuffers = selected;
+			
+			if (mState == STATE_RUNNING) {
+				startReaders();
+			}
+		}
+	}
+	
+	private void cancelExport() {
+		LogExporter exporter = mExporter;
+		
+		if (exporter != null) {
+			exporter.cancel();
+		}
 	}
 	
 	private void communicate(int msg) {
-		Message.obtain(mHandler, msg, "error").sendToTarget();
+		send(msg, "error");
 	}
 	
-	private void logLine(String line) {
-		Message.obtain(mHandler, MSG_NEW_LINE, line).sendToTarget();
+	/*
+	 * Sends to the activity's handler, or drops the message if nobody's bound.
+	 */
+	private static void send(int what, Object obj) {
+		Handler handler = mHandler;
+		
+		if (handler != null) {
+			Message.obtain(handler, what, obj).sendToTarget();
+		}
+	}
+	
+	/*
+	 * Swaps in a new filter and re-runs it over the retained scrollback instead of
+	 * restarting logcat. The UI gets one MSG_RESET_LOG which replaces whatever it was
+	 * showing: with a store the view is rebuilt and the list pages through it, without
+	 * one the message carries the matching entries. The delivery lock keeps the reader
+	 * thread from slipping a line in between the snapshot and the switch.
+	 */
+	private void refilter(LogFilter filter) {
+		mPipeline.setFilter(filter, new LogPipeline.FilterListener() {
+			public void filterChanged(List<LogEntry> matches) {
+				if (mBatcher != null) {
+					mBatcher.clear();
+				}
+				
+				send(MSG_RESET_LOG, matches);
+			}
+		});
 	}
 	
 	public static void setHandler(Handler handler) {
@@ -146,109 +517,377 @@ public class LogProcessor extends Service {
 	
 	@Override
 	public boolean onUnbind(Intent intent) {
-		requestKill();
-		stopSelf();
+		setHandler(null);
+		command(new Runnable() {
+			public void run() {
+				if (mBackground) {
+					detachBatcher();
+				} else {
+					stopReaders();
+					stopSelf();
+				}
+			}
+		});
 		
-		return false;
+		// so we hear about the next unbind too.
+		return true;
 	}
 	
 	private final ILogProcessor.Stub mBinder = new ILogProcessor.Stub() {
-		public void reset(String buffer) {
-			requestKill();
-
-			while (!mStatus) {
-				try {
-					Log.d("Logger", "waiting...");
-				} catch (Exception e) {
-					Log.d("Logger", "Woot! obj has been interrupted!");
+		public void reset(final String buffer) {
+			command(new Runnable() {
+				public void run() {
+					selectBuffers(new String[] { buffer });
+					
+					if (mState != STATE_RUNNING) {
+						startReaders();
+					}
+				}
+			});
+		}
+		
+		public void setBuffers(final String[] buffers) {
+			command(new Runnable() {
+				public void run() {
+					selectBuffers(buffers);
 				}
+			});
+		}
+		
+		/*
+		 * Starts reading type, unless that's already being read, in which case only
+		 * the caller's handler is hooked up; restart() always starts over.
+		 */
+		public void run(final int type) {
+			command(new Runnable() {
+				public void run() {
+					if (mState == STATE_RUNNING && type == mType) {
+						attachBatcher();
+					} else {
+						mType = type;
+						startReaders();
+					}
+				}
+			});
+		}
+		
+		public void restart(final int type) {
+			command(new Runnable() {
+				public void run() {
+					mType = type;
+					startReaders();
+				}
+			});
+		}
+		
+		public void stop() {
+			Log.i("Logger", "stop() method called in service.");
+			command(new Runnable() {
+				public void run() {
+					background(false);
+					stopReaders();
+					stopSelf();
+				}
+			});
+		}
+		
+		public void setBackground(final boolean background) {
+			command(new Runnable() {
+				public void run() {
+					background(background);
+				}
+			});
+		}
+		
+		public boolean isBackground() {
+			return mBackground;
+		}
+		
+		public int getState() {
+			return mState;
+		}
+		
+		public String[] getBuffers() {
+			return mBuffers;
+		}
+		
+		public int getType() {
+			return mType;
+		}
+		
+		public char getFilterLevel() {
+			return mFilterLevel;
+		}
+		
+		public String[] getIncludeTags() {
+			return mIncludeTags;
+		}
+		
+		public String[] getExcludeTags() {
+			return mExcludeTags;
+		}
+		
+		public String getFileOutput() {
+			return mFileOutput;
+		}
+		
+		public String getSocketOutput() {
+			return mSocketOutput;
+		}
+		
+		public void setBinaryMode(final boolean binary) {
+			command(new Runnable() {
+				public void run() {
+					if (binary != mBinary) {
+						mBinary = binary;
+						
+						if (mState == STATE_RUNNING) {
+							startReaders();
+						}
+					}
+				}
+			});
+		}
+		
+		public void write(String file, String tag) {
+			writeWithProgress(file, tag, null);
+		}
+		
+		/*
+		 * Queues an export behind the one running, if there's room; otherwise the UI
+		 * hears back "busy" right away.
+		 */
+		public void writeWithProgress(final String file, final String tag, final ILogExportCallback callback) {
+			try {
+				mExports.execute(new Runnable() {
+					public void run() {
+						writeLog(file, tag, callback);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				send(MSG_LOG_SAVE, "busy");
 			}
-			
-			threadKill = false;
-			mBuffer = buffer.toLowerCase();
-			mLines = 0;
-			mScrollback = new Vector<String>();
-			Thread thr = new Thread(worker);
-			thr.start();
 		}
 		
-		public void run(int type) {
-			mType = type;
-			mLines = 0;
-			mScrollback = new Vector<String>();
-			Thread thr = new Thread(worker);
-			thr.start();
+		public void cancelWrite() {
+			cancelExport();
+		}
+		
+		public int getTagId(String tag) {
+			return mPipeline.getTags().getId(tag.trim(), false);
+		}
+		
+		public String[] getTags() {
+			return mPipeline.getTags().getNames();
 		}
 		
-		public void restart(int type) {
-			requestKill();
+		public int[] getTagCounts() {
+			return mPipeline.getTags().getCounts();
+		}
+		
+		public void setFilter(char minLevel, String[] includeTags, String[] excludeTags, int pid,
+				String message, boolean regex) {
+			final LogFilter filter = LogFilter.compile(minLevel, includeTags, excludeTags, pid, message, regex,
+					mPipeline.getTags());
+			mFilterLevel = minLevel;
+			mIncludeTags = includeTags;
+			mExcludeTags = excludeTags;
 			
-			while(!mStatus) {
-				try {
-					Log.d("Logger", "waiting...");
-				} catch (Exception e) {
-					Log.d("Logger", "Woot! we have an exception");
+			// going back over the history takes a while, the list hears back with MSG_RESET_LOG.
+			command(new Runnable() {
+				public void run() {
+					refilter(filter);
 				}
+			});
+		}
+		
+		public long seek(long time) {
+			return mPipeline.seek(time);
+		}
+		
+		public List<LogEntry> range(long fromTime, long toTime, int max) {
+			return mPipeline.window(fromTime, toTime, max);
+		}
+		
+		public List<LogEntry> search(String query, long before, int max) {
+			return mPipeline.search(query, before, max);
+		}
+		
+		public long[] getLineRange() {
+			return mPipeline.getLineRange();
+		}
+		
+		public List<LogEntry> getLines(long from, int count) {
+			return mPipeline.page(from, count);
+		}
+		
+		public void setRateLimit(int linesPerSecond, int burst) {
+			mPipeline.getThrottle().setRate(linesPerSecond, burst);
+			mRateLimit = linesPerSecond;
+		}
+		
+		public int getRateLimit() {
+			return mRateLimit;
+		}
+		
+		public int[] getSuppressedCounts() {
+			return mPipeline.getThrottle().getSuppressedCounts();
+		}
+		
+		public StatsSnapshot getStats(int seconds) {
+			return mPipeline.getStats(seconds);
+		}
+		
+		public MetricsSnapshot getMetrics() {
+			long dropped;
+			
+			synchronized (mPipeline.lock()) {
+				dropped = mRetiredDrops + (mBatcher == null ? 0 : mBatcher.getDropped());
 			}
 			
-			threadKill = false;
-			run(type);
+			return mPipeline.getMetrics(dropped);
 		}
 		
-		public void stop() {
-			Log.i("Logger", "stop() method called in service.");
-			requestKill();
-			stopSelf();
+		public void linesShown(long oldestTime) {
+			mPipeline.shown(oldestTime);
 		}
 		
-		public void write(String file, String tag) {
-			mFilterTag = tag;
-			mFile = file;
-			Thread thr = new Thread(writer);
-			thr.start();
+		public void setFileOutput(final String path) {
+			command(new Runnable() {
+				public void run() {
+					if (path == null ? mFileOutput == null : path.equals(mFileOutput)) {
+						return;
+					}
+					
+					StreamSink sink = null;
+					
+					if (path != null) {
+						sink = new RotatingFileSink(new File(path), RotatingFileSink.DEFAULT_MAX_BYTES,
+								RotatingFileSink.DEFAULT_MAX_FILES) {
+							@Override
+							protected void warn(String message) {
+								Log.w("Logger", message);
+							}
+						};
+					}
+					
+					mPipeline.replaceSink(mFileSink, sink);
+					mFileSink = sink;
+					mFileOutput = path;
+				}
+			});
 		}
-	};
-	
-	Runnable writer = new Runnable() {
-		public void run() {
-			writeLog();
-			return;
+		
+		public void setSocketOutput(final String name) {
+			command(new Runnable() {
+				public void run() {
+					if (name == null ? mSocketOutput == null : name.equals(mSocketOutput)) {
+						return;
+					}
+					
+					StreamSink sink = null;
+					
+					if (name != null) {
+						sink = new SocketSink(name, new LocalSocketTransport(name)) {
+							@Override
+							protected void warn(String message) {
+								Log.w("Logger", message);
+							}
+						};
+					}
+					
+					mPipeline.replaceSink(mSocketSink, sink);
+					mSocketSink = sink;
+					mSocketOutput = name;
+				}
+			});
 		}
 	};
 	
-	private void writeLog() {
+	/*
+	 * Writes the log out to /sdcard/file, on the export thread.
+	 */
+	private void writeLog(String file, String tag, final ILogExportCallback callback) {
+		LogExporter exporter = new LogExporter();
+		LogExporter.Progress progress = null;
+		FileOutputStream out = null;
+		File dest = new File("/sdcard/" + file);
+		// only renamed to the real name once complete, so a cancelled or failed export
+		// doesn't leave half a log behind.
+		File part = new File(dest.getPath() + ".part");
+		boolean saved = false;
+		mExporter = exporter;
 		
-		try {			
-			File f = new File("/sdcard/" + mFile);
-			FileWriter w = new FileWriter(f);
+		try {
+			out = new FileOutputStream(part);
+			String filterTag = tag.trim();
+			int filterId = filterTag.equals("") ? TagTable.NO_TAG : mPipeline.getTags().getId(filterTag, false);
+			// a tag that's never been logged matches nothing, the file just comes out empty.
+			boolean none = filterId == TagTable.NO_TAG && !filterTag.equals("");
+			int written;
 			
-			for (int i = 0; i < mScrollback.size(); i++) {
-				String line = mScrollback.elementAt(i);
-				
-				if (!mFilterTag.equals("")) {
-		    		String tag = line.substring(2, line.indexOf("("));
-		    		
-		    		if (mFilterTag.toLowerCase().equals(tag.toLowerCase().trim())) {
-		    			w.write(line + "\n");
-		    		}
-		    	} else {
-		    		w.write(mScrollback.elementAt(i) + "\n");
-		    	}
-
-				i++;
+			if (callback != null) {
+				progress = new LogExporter.Progress() {
+					public void onProgress(int lines, int total) {
+						try {
+							callback.onProgress(lines, total);
+						} catch (RemoteException e) {
+							Log.w("Logger", "Export progress callback is gone");
+						}
+					}
+				};
 			}
 			
-			if (!mFile.equals("tmp.log")) {
-				Message.obtain(mHandler, MSG_LOG_SAVE, "saved").sendToTarget();
+			// a .gz name gets compressed on the way out, never holding a second copy.
+			if (file.endsWith(".gz")) {
+				GZIPOutputStream gzip = new GZIPOutputStream(out, LogExporter.BUFFER_SIZE) {
+					{
+						def.setLevel(Deflater.BEST_SPEED);
+					}
+				};
+				
+				written = none ? 0 : mPipeline.export(exporter, filterId, Channels.newChannel(gzip), progress);
+				gzip.finish();
 			} else {
-				Message.obtain(mHandler, MSG_LOG_SAVE, "attachment").sendToTarget();
+				written = none ? 0 : mPipeline.export(exporter, filterId, out.getChannel(), progress);
+			}
+			
+			if (written < 0) {
+				send(MSG_LOG_SAVE, "cancelled");
+				return;
 			}
 			
-			w.close();
-			f = null;
+			out.close();
+			out = null;
+			
+			if (!part.renameTo(dest)) {
+				throw new IOException("Could not rename " + part + " to " + dest);
+			}
+			
+			saved = true;
+			
+			if (!file.equals(ATTACHMENT_FILE)) {
+				send(MSG_LOG_SAVE, "saved");
+			} else {
+				send(MSG_LOG_SAVE, "attachment");
+			}
 		} catch (Exception e) {
 			Log.e("Logger", "Error writing the log to a file. Exception: " + e.toString());
-			Message.obtain(mHandler, MSG_LOG_SAVE, "error").sendToTarget();
+			send(MSG_LOG_SAVE, "error");
+		} finally {
+			try {
+				if (out != null) {
+					out.close();
+				}
+			} catch (IOException e) {
+				Log.w("Logger", "Error closing the log file: " + e.toString());
+			}
+			
+			if (!saved) {
+				part.delete();
+			}
+			
+			mExporter = null;
 		}
 		
 		return;
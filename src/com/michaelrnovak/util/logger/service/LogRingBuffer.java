@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Fixed capacity scrollback shared between the reader thread and everybody else. Only
+ * the reader thread may call add(), any other thread can read without taking a lock.
+ * Every element gets a sequence number; once more than capacity elements have been
+ * added the oldest ones are overwritten in place. There is one slot more than the
+ * capacity: add() stores into it before bumping the head, so the slot being written
+ * never belongs to an element a reader can still ask for.
+ */
+public class LogRingBuffer<T> {
+	private final Object[] mSlots;
+	private final int mCapacity;
+	private volatile long mHead = 0;
+	private volatile long mStart = 0;
+
+	public LogRingBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+
+		mCapacity = capacity;
+		mSlots = new Object[capacity + 1];
+	}
+
+	public int capacity() {
+		return mCapacity;
+	}
+
+	/*
+	 * Appends an element, overwriting the oldest one when full. Must only be called
+	 * from the single producer thread.
+	 */
+	public void add(T item) {
+		long head = mHead;
+		mSlots[(int) (head % mSlots.length)] = item;
+		mHead = head + 1;
+	}
+
+	/*
+	 * Sequence number the next added element will get.
+	 */
+	public long head() {
+		return mHead;
+	}
+
+	/*
+	 * Sequence number of the oldest element still held.
+	 */
+	public long tail() {
+		long head = mHead;
+		return Math.max(mStart, head - mCapacity);
+	}
+
+	public int size() {
+		long head = mHead;
+		return (int) (head - Math.max(mStart, head - mCapacity));
+	}
+
+	/*
+	 * Returns the element with the given sequence number or null if it has already
+	 * been overwritten (or was never written).
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(long seq) {
+		if (seq < mStart || seq >= mHead) {
+			return null;
+		}
+
+		T item = (T) mSlots[(int) (seq % mSlots.length)];
+
+		// the producer may have lapped us while we were reading the slot.
+		if (seq < mHead - mCapacity) {
+			return null;
+		}
+
+		return item;
+	}
+
+	/*
+	 * Copies every element from sequence number from (inclusive) onwards into out and
+	 * returns the sequence number following the last element copied. Elements that get
+	 * overwritten during the copy are dropped, so out always holds a contiguous run
+	 * that existed at one point in time.
+	 */
+	@SuppressWarnings("unchecked")
+	public long snapshot(long from, List<T> out) {
+		long head = mHead;
+		long start = Math.max(from, Math.max(mStart, head - mCapacity));
+		int base = out.size();
+
+		for (long seq = start; seq < head; seq++) {
+			out.add((T) mSlots[(int) (seq % mSlots.length)]);
+		}
+
+		long valid = mHead - mCapacity;
+
+		if (valid > start) {
+			int lost = (int) Math.min(valid - start, head - start);
+			out.subList(base, base + lost).clear();
+		}
+
+		return head;
+	}
+
+	public List<T> snapshot() {
+		List<T> out = new ArrayList<T>(size());
+		snapshot(0, out);
+		return out;
+	}
+
+	/*
+	 * Drops every element. Sequence numbers keep counting up so a reader holding an old
+	 * one never mistakes new elements for ones it has already seen. Like add() this
+	 * belongs to the producer thread, or to whoever owns the buffer once it has stopped.
+	 */
+	public void clear() {
+		mStart = mHead;
+
+		for (int i = 0; i < mSlots.length; i++) {
+			mSlots[i] = null;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+/*
+ * Somewhere the entries that make it through the filter go: the UI, a file, a socket.
+ * The service hands every entry to each registered sink in turn from the reader
+ * thread, with the delivery lock held, so publish() must never block; a sink that
+ * can't keep up queues or drops on its own side.
+ */
+public interface LogSink {
+	void publish(LogEntry entry);
+
+	/*
+	 * Unregisters the sink for good, releasing whatever it holds.
+	 */
+	void close();
+}
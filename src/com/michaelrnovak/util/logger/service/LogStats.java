@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.util.Arrays;
+
+/*
+ * Rolling counts of lines and bytes per tag, level and pid. Counts go into one slot
+ * per second of wall clock time, SLOTS of them reused round robin, each slot a set of
+ * int arrays indexed by tag id, priority or a small pid index; a slot is wiped the
+ * first time it's written in a new second. Any window up to SLOTS seconds is then the
+ * sum of its slots. Recording is a few array increments done by the reader threads
+ * before a line reaches the delivery lock, so with several buffers open more than one
+ * reader can be in here at once; the lock on this object is all that orders them, and
+ * it's only ever held for those increments or a snapshot.
+ *
+ * Pids get their index from a little open addressing table. A pid that hasn't logged
+ * for SLOTS seconds has nothing left in any window, so once MAX_PIDS indexes are
+ * taken the table is swept (at most once a second) and those are handed out again.
+ * Only while more than MAX_PIDS pids are logging at once are the rest counted in
+ * totals only.
+ */
+public class LogStats {
+	public static final int SLOTS = 60;
+	public static final int MAX_PIDS = 1024;
+	private static final int LEVELS = 8;
+	private final long[] mSecond = new long[SLOTS];
+	private final int[][] mLevelLines = new int[SLOTS][LEVELS];
+	private final int[] mLines = new int[SLOTS];
+	private final long[] mBytes = new long[SLOTS];
+	private int[][] mTagLines = new int[SLOTS][64];
+	private int[][] mTagBytes = new int[SLOTS][64];
+	private int[][] mPidLines = new int[SLOTS][64];
+	private int[][] mPidBytes = new int[SLOTS][64];
+	private final int[] mPidSlots = new int[MAX_PIDS * 2];
+	private final int[] mPids = new int[MAX_PIDS];
+	private final long[] mPidSeen = new long[MAX_PIDS];
+	private final int[] mFreePids = new int[MAX_PIDS];
+	private int mPidCount = 0;
+	private int mFreeCount = 0;
+	private long mSwept = -1;
+
+	public LogStats() {
+		Arrays.fill(mSecond, -1);
+		Arrays.fill(mPidSlots, -1);
+		Arrays.fill(mPids, -1);
+	}
+
+	/*
+	 * Counts one line of bytes bytes, logged at now in milliseconds. bytes is the
+	 * message's length in UTF-8, without the header, so text and binary mode count
+	 * the same thing. Lines without a tag or pid (NO_TAG, -1) only count toward the
+	 * totals and levels.
+	 */
+	public synchronized void record(char level, int tagId, int pid, int bytes, long now) {
+		long second = now / 1000;
+		int slot = (int) (second % SLOTS);
+
+		if (mSecond[slot] != second) {
+			wipe(slot);
+			mSecond[slot] = second;
+		}
+
+		mLines[slot]++;
+		mBytes[slot] += bytes;
+		mLevelLines[slot][LogFilter.priority(level)]++;
+
+		if (tagId != TagTable.NO_TAG) {
+			if (tagId >= mTagLines[slot].length) {
+				mTagLines = grow(mTagLines, tagId + 1);
+				mTagBytes = grow(mTagBytes, tagId + 1);
+			}
+
+			mTagLines[slot][tagId]++;
+			mTagBytes[slot][tagId] += bytes;
+		}
+
+		int p = pid < 0 ? -1 : pidIndex(pid, second);
+
+		if (p >= 0) {
+			if (p >= mPidLines[slot].length) {
+				mPidLines = grow(mPidLines, p + 1);
+				mPidBytes = grow(mPidBytes, p + 1);
+			}
+
+			mPidLines[slot][p]++;
+			mPidBytes[slot][p] += bytes;
+		}
+	}
+
+	/*
+	 * Sums up the last seconds seconds (the current one included) and picks out the
+	 * top busiest tags and pids.
+	 */
+	public synchronized StatsSnapshot snapshot(int seconds, int top, long now, TagTable tags) {
+		seconds = Math.max(1, Math.min(SLOTS, seconds));
+		long second = now / 1000;
+		int lines = 0;
+		long bytes = 0;
+		int[] levels = new int[LEVELS];
+		int[] tagLines = new int[mTagLines[0].length];
+		int[] tagBytes = new int[tagLines.length];
+		int[] pidLines = new int[mPidLines[0].length];
+		int[] pidBytes = new int[pidLines.length];
+
+		for (int i = 0; i < SLOTS; i++) {
+			if (mSecond[i] <= second - seconds || mSecond[i] > second) {
+				continue;
+			}
+
+			lines += mLines[i];
+			bytes += mBytes[i];
+			add(levels, mLevelLines[i]);
+			add(tagLines, mTagLines[i]);
+			add(tagBytes, mTagBytes[i]);
+			add(pidLines, mPidLines[i]);
+			add(pidBytes, mPidBytes[i]);
+		}
+
+		int[] topTags = top(tagLines, top);
+		int[] topPids = top(pidLines, top);
+		String[] tagNames = new String[topTags.length];
+		int[] pids = new int[topPids.length];
+
+		for (int i = 0; i < topTags.length; i++) {
+			tagNames[i] = tags.getName(topTags[i]);
+		}
+
+		for (int i = 0; i < topPids.length; i++) {
+			pids[i] = mPids[topPids[i]];
+		}
+
+		return new StatsSnapshot(seconds, lines, bytes, levels, tagNames, pick(tagLines, topTags),
+				pick(tagBytes, topTags), pids, pick(pidLines, topPids), pick(pidBytes, topPids));
+	}
+
+	private void wipe(int slot) {
+		mLines[slot] = 0;
+		mBytes[slot] = 0;
+		Arrays.fill(mLevelLines[slot], 0);
+		Arrays.fill(mTagLines[slot], 0);
+		Arrays.fill(mTagBytes[slot], 0);
+		Arrays.fill(mPidLines[slot], 0);
+		Arrays.fill(mPidBytes[slot], 0);
+	}
+
+	private int pidIndex(int pid, long second) {
+		int mask = mPidSlots.length - 1;
+		int slot = (pid * 0x9e3779b1) >>> 16 & mask;
+
+		while (mPidSlots[slot] != -1) {
+			int p = mPidSlots[slot];
+
+			if (mPids[p] == pid) {
+				mPidSeen[p] = second;
+				return p;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		int p;
+
+		if (mPidCount < MAX_PIDS) {
+			p = mPidCount++;
+		} else {
+			if (mFreeCount == 0 && mSwept != second) {
+				expirePids(second);
+				mSwept = second;
+			}
+
+			if (mFreeCount == 0) {
+				return -1;
+			}
+
+			p = mFreePids[--mFreeCount];
+		}
+
+		mPids[p] = pid;
+		mPidSeen[p] = second;
+		insertPid(p);
+		return p;
+	}
+
+	/*
+	 * Frees the index of every pid that hasn't logged in the last SLOTS seconds. Its
+	 * counts are all in slots no window reaches, and those are wiped before reuse.
+	 * The table is rebuilt from the pids that are left rather than deleted from.
+	 */
+	private void expirePids(long second) {
+		Arrays.fill(mPidSlots, -1);
+
+		for (int p = 0; p < mPidCount; p++) {
+			if (mPids[p] < 0) {
+				continue;
+			} else if (mPidSeen[p] <= second - SLOTS) {
+				mPids[p] = -1;
+				mFreePids[mFreeCount++] = p;
+			} else {
+				insertPid(p);
+			}
+		}
+	}
+
+	private void insertPid(int p) {
+		int mask = mPidSlots.length - 1;
+		int slot = (mPids[p] * 0x9e3779b1) >>> 16 & mask;
+
+		while (mPidSlots[slot] != -1) {
+			slot = (slot + 1) & mask;
+		}
+
+		mPidSlots[slot] = p;
+	}
+
+	/*
+	 * Indexes of the n largest counts, largest first, leaving out zeros.
+	 */
+	private static int[] top(int[] counts, int n) {
+		int[] best = new int[n];
+		int size = 0;
+
+		for (int i = 0; i < counts.length && n > 0; i++) {
+			if (counts[i] == 0 || (size == n && counts[i] <= counts[best[n - 1]])) {
+				continue;
+			}
+
+			int j = size < n ? size++ : n - 1;
+
+			while (j > 0 && counts[best[j - 1]] < counts[i]) {
+				best[j] = best[j - 1];
+				j--;
+			}
+
+			best[j] = i;
+		}
+
+		int[] out = new int[size];
+		System.arraycopy(best, 0, out, 0, size);
+		return out;
+	}
+
+	private static int[] pick(int[] counts, int[] indexes) {
+		int[] out = new int[indexes.length];
+
+		for (int i = 0; i < indexes.length; i++) {
+			out[i] = counts[indexes[i]];
+		}
+
+		return out;
+	}
+
+	private static void add(int[] sum, int[] counts) {
+		for (int i = 0; i < counts.length; i++) {
+			sum[i] += counts[i];
+		}
+	}
+
+	private static int[][] grow(int[][] slots, int min) {
+		int size = Math.max(min, slots[0].length * 2);
+		int[][] out = new int[slots.length][size];
+
+		for (int i = 0; i < slots.length; i++) {
+			System.arraycopy(slots[i], 0, out[i], 0, slots[i].length);
+		}
+
+		return out;
+	}
+}
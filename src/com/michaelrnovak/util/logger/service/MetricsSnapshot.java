@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/*
+ * How the pipeline itself is doing. Rates are over the last RATE_SECONDS seconds,
+ * counts are since the service started, and each distribution is its 50th, 90th
+ * and 99th percentile and maximum:
+ *
+ *   parseNanos - time to parse a line, sampled
+ *   lagMillis  - from a line being read off the stream (its received time, in
+ *                either mode) to the list showing it, for the oldest line of each
+ *                batch
+ *   backlog    - lines waiting on the UI each time the batcher tries to hand some over
+ */
+public class MetricsSnapshot implements Parcelable {
+	public static final int RATE_SECONDS = 10;
+	public static final double[] PERCENTILES = { 50, 90, 99, 100 };
+	public final int linesPerSecond;
+	public final int bytesPerSecond;
+	public final long passed;
+	public final long rejected;
+	public final long suppressed;
+	public final long uiDropped;
+	public final long sinkDropped;
+	public final long[] parseNanos;
+	public final long[] lagMillis;
+	public final long[] backlog;
+
+	public MetricsSnapshot(int linesPerSecond, int bytesPerSecond, long passed, long rejected, long suppressed,
+			long uiDropped, long sinkDropped, long[] parseNanos, long[] lagMillis, long[] backlog) {
+		this.linesPerSecond = linesPerSecond;
+		this.bytesPerSecond = bytesPerSecond;
+		this.passed = passed;
+		this.rejected = rejected;
+		this.suppressed = suppressed;
+		this.uiDropped = uiDropped;
+		this.sinkDropped = sinkDropped;
+		this.parseNanos = parseNanos;
+		this.lagMillis = lagMillis;
+		this.backlog = backlog;
+	}
+
+	/*
+	 * The share of lines the filter let through, from 0 to 1.
+	 */
+	public float passRatio() {
+		return passed + rejected == 0 ? 1 : (float) passed / (passed + rejected);
+	}
+
+	public static final Parcelable.Creator<MetricsSnapshot> CREATOR = new Parcelable.Creator<MetricsSnapshot>() {
+		public MetricsSnapshot createFromParcel(Parcel in) {
+			return new MetricsSnapshot(in.readInt(), in.readInt(), in.readLong(), in.readLong(), in.readLong(),
+					in.readLong(), in.readLong(), in.createLongArray(), in.createLongArray(), in.createLongArray());
+		}
+
+		public MetricsSnapshot[] newArray(int size) {
+			return new MetricsSnapshot[size];
+		}
+	};
+
+	public int describeContents() {
+		return 0;
+	}
+
+	public void writeToParcel(Parcel out, int flags) {
+		out.writeInt(linesPerSecond);
+		out.writeInt(bytesPerSecond);
+		out.writeLong(passed);
+		out.writeLong(rejected);
+		out.writeLong(suppressed);
+		out.writeLong(uiDropped);
+		out.writeLong(sinkDropped);
+		out.writeLongArray(parseNanos);
+		out.writeLongArray(lagMillis);
+		out.writeLongArray(backlog);
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * The output of a command, logcat or dmesg. Closing destroys the process, which is
+ * the only way to get a blocked readLine() to give up.
+ */
+public class ProcessSource implements LogSource {
+	private final String mCommand;
+	private Process mProcess;
+	private boolean mClosed = false;
+
+	public ProcessSource(String command) {
+		mCommand = command;
+	}
+
+	public static ProcessSource logcat(String buffer, boolean binary) {
+		return new ProcessSource("/system/bin/logcat " + (binary ? "-B " : "") + "-b " + buffer);
+	}
+
+	public static ProcessSource dmesg() {
+		return new ProcessSource("dmesg -s 1000000");
+	}
+
+	public InputStream open() throws IOException {
+		Process process = Runtime.getRuntime().exec(mCommand);
+
+		synchronized (this) {
+			// closed while it was starting, don't leave it running.
+			if (mClosed) {
+				process.destroy();
+			}
+
+			mProcess = process;
+		}
+
+		return process.getInputStream();
+	}
+
+	public synchronized void close() {
+		mClosed = true;
+
+		if (mProcess != null) {
+			mProcess.destroy();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/*
+ * Plays back a recorded logcat or dmesg text capture, so the pipeline can be run and
+ * measured away from a device. At linesPerSecond 0 the file is handed over as fast as
+ * it can be read; otherwise each line is held back until its turn comes, keeping to
+ * the rate on average without bunching up. The file is played repeat times over.
+ *
+ * Pacing goes by newlines, so a binary (-B) capture only makes sense at rate 0.
+ */
+public class ReplaySource implements LogSource {
+	public static final int BUFFER_SIZE = 8192;
+	private final File mFile;
+	private final int mRate;
+	private final int mRepeat;
+	private volatile boolean mClosed = false;
+	private volatile Thread mReader;
+
+	public ReplaySource(File file, int linesPerSecond, int repeat) {
+		mFile = file;
+		mRate = linesPerSecond;
+		mRepeat = Math.max(1, repeat);
+	}
+
+	public InputStream open() throws IOException {
+		mReader = Thread.currentThread();
+		return new Replay();
+	}
+
+	public void close() {
+		mClosed = true;
+		Thread reader = mReader;
+
+		// wakes it up if it's waiting on the next line's turn.
+		if (reader != null) {
+			reader.interrupt();
+		}
+	}
+
+	private class Replay extends InputStream {
+		private final byte[] mBuf = new byte[BUFFER_SIZE];
+		private InputStream mIn = new FileInputStream(mFile);
+		private int mPos = 0;
+		private int mLimit = 0;
+		private int mPass = 1;
+		private long mLines = 0;
+		private boolean mLineStart = true;
+		private final long mStart = System.currentTimeMillis();
+
+		Replay() throws IOException {
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+
+			if (mPos == mLimit && !fill()) {
+				return -1;
+			}
+
+			if (mRate == 0) {
+				int n = Math.min(len, mLimit - mPos);
+				System.arraycopy(mBuf, mPos, b, off, n);
+				mPos += n;
+				return n;
+			}
+
+			if (mLineStart) {
+				pace();
+				mLineStart = false;
+			}
+
+			// stop after a newline so the next line waits its turn.
+			int n = 0;
+
+			while (n < len && mPos < mLimit) {
+				byte c = mBuf[mPos++];
+				b[off + n++] = c;
+
+				if (c == '\n') {
+					mLineStart = true;
+					mLines++;
+					break;
+				}
+			}
+
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			mReader = null;
+			mIn.close();
+		}
+
+		private boolean fill() throws IOException {
+			while (!mClosed) {
+				int n = mIn.read(mBuf, 0, mBuf.length);
+
+				if (n > 0) {
+					mPos = 0;
+					mLimit = n;
+					return true;
+				}
+
+				if (mPass == mRepeat) {
+					break;
+				}
+
+				mIn.close();
+				mIn = new FileInputStream(mFile);
+				mPass++;
+			}
+
+			return false;
+		}
+
+		private void pace() throws IOException {
+			long due = mStart + mLines * 1000 / mRate;
+			long wait;
+
+			while (!mClosed && (wait = due - System.currentTimeMillis()) > 0) {
+				try {
+					Thread.sleep(wait);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+		}
+	}
+}
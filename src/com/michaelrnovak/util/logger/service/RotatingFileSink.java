@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/*
+ * Appends the log to a text file, and once the file would grow past maxBytes moves it
+ * aside as file.1 (file.1 to file.2 and so on, dropping the last of maxFiles) and
+ * starts a new one. The queue drops new lines when full, so what makes it to disk is
+ * a continuous run with a note where the gap is.
+ */
+public class RotatingFileSink extends StreamSink {
+	public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+	public static final int DEFAULT_MAX_FILES = 4;
+	public static final int QUEUE_LINES = 8192;
+	private final File mFile;
+	private final long mMaxBytes;
+	private final int mMaxFiles;
+	private FileOutputStream mOut;
+	private long mLength;
+
+	public RotatingFileSink(File file, long maxBytes, int maxFiles) {
+		super(file.getName(), QUEUE_LINES, DROP_NEWEST);
+		mFile = file;
+		mMaxBytes = maxBytes;
+		mMaxFiles = maxFiles;
+	}
+
+	@Override
+	protected void open() throws IOException {
+		File dir = mFile.getParentFile();
+
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create " + dir);
+		}
+
+		mOut = new FileOutputStream(mFile, true);
+		mLength = mFile.length();
+	}
+
+	@Override
+	protected void write(byte[] b, int off, int len) throws IOException {
+		if (mLength > 0 && mLength + len > mMaxBytes) {
+			rotate();
+		}
+
+		mOut.write(b, off, len);
+		mLength += len;
+	}
+
+	@Override
+	protected void release() {
+		try {
+			if (mOut != null) {
+				mOut.close();
+			}
+		} catch (IOException e) {
+			warn("Error closing " + mFile + ": " + e.toString());
+		}
+	}
+
+	private void rotate() throws IOException {
+		mOut.close();
+		new File(mFile.getPath() + "." + (mMaxFiles - 1)).delete();
+
+		for (int i = mMaxFiles - 2; i >= 0; i--) {
+			File from = i == 0 ? mFile : new File(mFile.getPath() + "." + i);
+			from.renameTo(new File(mFile.getPath() + "." + (i + 1)));
+		}
+
+		mOut = new FileOutputStream(mFile, false);
+		mLength = 0;
+	}
+}
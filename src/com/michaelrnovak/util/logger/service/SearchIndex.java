@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/*
+ * Inverted index over the stored log. Every run of two or more letters in a line is a
+ * token (lower cased), and each token maps to the ascending list of sequence numbers
+ * of the lines it appears in, kept in a plain int array. Numbers aren't indexed, they
+ * would swamp the dictionary with pids and addresses.
+ *
+ * Searches are case insensitive substring searches. A line containing the query has,
+ * for every letter run of the query, some token containing that run, so the union of
+ * the postings of those tokens, intersected across the runs, is a superset of the
+ * matches. The caller still has to check each candidate against its text.
+ *
+ * Sequence numbers are stored relative to the first one indexed, as ints.
+ */
+public class SearchIndex {
+	public static final int MIN_TOKEN = 2;
+	private final HashMap<String, Postings> mPostings = new HashMap<String, Postings>();
+	private final long mBase;
+	private long mFirst;
+
+	private static class Postings {
+		int[] seqs = new int[4];
+		int start = 0;
+		int end = 0;
+
+		void add(int seq) {
+			// a token repeated within a line only needs the one posting.
+			if (end > start && seqs[end - 1] == seq) {
+				return;
+			}
+
+			if (end == seqs.length) {
+				int live = end - start;
+				int[] s = live * 2 > seqs.length ? new int[seqs.length * 2] : seqs;
+				System.arraycopy(seqs, start, s, 0, live);
+				seqs = s;
+				start = 0;
+				end = live;
+			}
+
+			seqs[end++] = seq;
+		}
+
+		void evict(int first) {
+			int lo = start;
+			int hi = end;
+
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+
+				if (seqs[mid] < first) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+
+			start = lo;
+		}
+	}
+
+	/*
+	 * Starts an empty index that will be fed entries from sequence number first on.
+	 */
+	public SearchIndex(long first) {
+		mBase = first;
+		mFirst = first;
+	}
+
+	/*
+	 * Sequence number of the oldest entry the index covers. Anything older has to be
+	 * searched the slow way.
+	 */
+	public synchronized long first() {
+		return mFirst;
+	}
+
+	/*
+	 * Indexes an entry. Entries have to come in sequence order.
+	 */
+	public synchronized void add(long seq, LogEntry entry) {
+		String line = entry.line.toLowerCase();
+		int rel = (int) (seq - mBase);
+		int len = line.length();
+		int i = 0;
+
+		while (i < len) {
+			while (i < len && !Character.isLetter(line.charAt(i))) {
+				i++;
+			}
+
+			int start = i;
+
+			while (i < len && Character.isLetter(line.charAt(i))) {
+				i++;
+			}
+
+			if (i - start >= MIN_TOKEN) {
+				String token = line.substring(start, i);
+				Postings p = mPostings.get(token);
+
+				if (p == null) {
+					p = new Postings();
+					mPostings.put(token, p);
+				}
+
+				p.add(rel);
+			}
+		}
+	}
+
+	/*
+	 * Drops the postings of everything before sequence number first, called as the
+	 * store rotates old segments away. Tokens left without postings are forgotten.
+	 */
+	public synchronized void evict(long first) {
+		if (first <= mFirst) {
+			return;
+		}
+
+		mFirst = first;
+		int rel = (int) (first - mBase);
+		Iterator<Map.Entry<String, Postings>> it = mPostings.entrySet().iterator();
+
+		while (it.hasNext()) {
+			Postings p = it.next().getValue();
+			p.evict(rel);
+
+			if (p.start == p.end) {
+				it.remove();
+			}
+		}
+	}
+
+	/*
+	 * Ascending sequence numbers of the lines that may contain query, or null if the
+	 * query has no letter run long enough to look up and the index can't help.
+	 */
+	public synchronized long[] candidates(String query) {
+		String q = query.toLowerCase();
+		int[] result = null;
+		int len = q.length();
+		int i = 0;
+
+		while (i < len) {
+			while (i < len && !Character.isLetter(q.charAt(i))) {
+				i++;
+			}
+
+			int start = i;
+
+			while (i < len && Character.isLetter(q.charAt(i))) {
+				i++;
+			}
+
+			if (i - start >= MIN_TOKEN) {
+				int[] run = union(q.substring(start, i));
+				result = result == null ? run : intersect(result, run);
+
+				if (result.length == 0) {
+					break;
+				}
+			}
+		}
+
+		if (result == null) {
+			return null;
+		}
+
+		long[] seqs = new long[result.length];
+
+		for (int j = 0; j < result.length; j++) {
+			seqs[j] = mBase + result[j];
+		}
+
+		return seqs;
+	}
+
+	public synchronized int size() {
+		return mPostings.size();
+	}
+
+	/*
+	 * Every line with a token containing run. The dictionary is far smaller than the
+	 * log, so walking it is cheap next to walking the lines.
+	 */
+	private int[] union(String run) {
+		Postings exact = mPostings.get(run);
+		ArrayList<Postings> lists = new ArrayList<Postings>();
+		int total = 0;
+
+		for (Map.Entry<String, Postings> e : mPostings.entrySet()) {
+			if (e.getKey().indexOf(run) >= 0) {
+				Postings p = e.getValue();
+				lists.add(p);
+				total += p.end - p.start;
+			}
+		}
+
+		if (lists.size() == 1 && lists.get(0) == exact) {
+			return copy(exact.seqs, exact.start, exact.end);
+		}
+
+		int[] all = new int[total];
+		int n = 0;
+
+		for (int j = 0; j < lists.size(); j++) {
+			Postings p = lists.get(j);
+			System.arraycopy(p.seqs, p.start, all, n, p.end - p.start);
+			n += p.end - p.start;
+		}
+
+		Arrays.sort(all);
+		n = 0;
+
+		for (int j = 0; j < all.length; j++) {
+			if (n == 0 || all[n - 1] != all[j]) {
+				all[n++] = all[j];
+			}
+		}
+
+		return copy(all, 0, n);
+	}
+
+	private static int[] intersect(int[] a, int[] b) {
+		int[] out = new int[Math.min(a.length, b.length)];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				out[n++] = a[i];
+				i++;
+				j++;
+			}
+		}
+
+		return copy(out, 0, n);
+	}
+
+	// Arrays.copyOfRange() isn't there before Gingerbread.
+	private static int[] copy(int[] a, int from, int to) {
+		int[] out = new int[to - from];
+		System.arraycopy(a, from, out, 0, to - from);
+		return out;
+	}
+}
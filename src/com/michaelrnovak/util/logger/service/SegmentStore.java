@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ * On-disk log history: a directory of fixed size segment files, each memory mapped,
+ * holding records of
+ *
+ *     int   length of the line in bytes, plus one (0 marks the end of the data)
+ *     long  time received
+ *     long  time of the log record
+ *     byte  UTF-8 text of the line
+ *
+ * Every record gets a sequence number, counting on across segments; a segment file
+ * is named after the sequence number of its first record. Each segment keeps a
+ * sparse in-memory index of the offset and received time of every INDEX_STRIDE-th
+ * record, so finding a record by sequence number or time is a binary search plus a
+ * short scan. That only works because received times never go backwards: append()
+ * holds an entry's back to the last one stored if the clock has been set back. The
+ * record's own time can be anything and is only carried along.
+ * Once there are more than maxSegments files the oldest is deleted, which caps the
+ * disk used. The files are found again when the store is reopened, so history
+ * outlives the service.
+ */
+public class SegmentStore {
+	public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+	public static final int DEFAULT_MAX_SEGMENTS = 16;
+	public static final int INDEX_STRIDE = 64;
+	private static final int RECORD_HEADER = 20;
+	private static final String SUFFIX = ".seg";
+	private final File mDir;
+	private final int mSegmentSize;
+	private final int mMaxSegments;
+	private final LogParser mParser;
+	private final ArrayList<Segment> mSegments = new ArrayList<Segment>();
+	private long mNextSeq = 0;
+	private long mLastReceived = Long.MIN_VALUE;
+	private byte[] mBytes = new byte[4096];
+	private char[] mChars = new char[4096];
+
+	private static class Segment {
+		final long firstSeq;
+		final File file;
+		final MappedByteBuffer buf;
+		int count = 0;
+		int end = 0;
+		int[] indexPos = new int[64];
+		long[] indexTime = new long[64];
+		int indexSize = 0;
+
+		Segment(long firstSeq, File file, MappedByteBuffer buf) {
+			this.firstSeq = firstSeq;
+			this.file = file;
+			this.buf = buf;
+		}
+
+		/*
+		 * Called for every record as it's added, at byte offset pos.
+		 */
+		void added(int pos, long time) {
+			if (count % INDEX_STRIDE == 0) {
+				if (indexSize == indexPos.length) {
+					int[] p = new int[indexSize * 2];
+					long[] t = new long[indexSize * 2];
+					System.arraycopy(indexPos, 0, p, 0, indexSize);
+					System.arraycopy(indexTime, 0, t, 0, indexSize);
+					indexPos = p;
+					indexTime = t;
+				}
+
+				indexPos[indexSize] = pos;
+				indexTime[indexSize] = time;
+				indexSize++;
+			}
+
+			count++;
+		}
+	}
+
+	/*
+	 * Opens (or creates) the store in dir. The parser is used to turn stored lines back
+	 * into entries and shouldn't count tags, they were counted on the way in.
+	 */
+	public SegmentStore(File dir, int segmentSize, int maxSegments, LogParser parser) throws IOException {
+		mDir = dir;
+		mSegmentSize = segmentSize;
+		mMaxSegments = maxSegments;
+		mParser = parser;
+
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create " + dir);
+		}
+
+		recover();
+	}
+
+	/*
+	 * Appends an entry and returns its sequence number. A line too long for even an
+	 * empty segment is stored cut short to what fits; the entry itself keeps it whole.
+	 * An IOException means the disk has let us down, not that the line was bad.
+	 */
+	public synchronized long append(LogEntry entry) throws IOException {
+		String line = entry.line;
+		int len = Utf8.length(line);
+
+		// keep room for the end marker after the last record.
+		if (RECORD_HEADER + len > mSegmentSize - 4) {
+			line = line.substring(0, Utf8.fit(line, mSegmentSize - 4 - RECORD_HEADER));
+			len = Utf8.length(line);
+		}
+
+		int size = RECORD_HEADER + len;
+
+		Segment seg = mSegments.size() == 0 ? null : mSegments.get(mSegments.size() - 1);
+
+		if (seg == null || seg.end + size > mSegmentSize - 4) {
+			seg = roll();
+		}
+
+		MappedByteBuffer buf = seg.buf;
+		buf.position(seg.end);
+		entry.received = Math.max(entry.received, mLastReceived);
+		mLastReceived = entry.received;
+		buf.putInt(len + 1);
+		buf.putLong(entry.received);
+		buf.putLong(entry.time);
+		Utf8.encode(line, buf);
+		buf.putInt(0);
+		seg.added(seg.end, entry.received);
+		seg.end += size;
+		entry.seq = mNextSeq;
+
+		return mNextSeq++;
+	}
+
+	/*
+	 * Sequence number of the oldest entry still on disk.
+	 */
+	public synchronized long firstSeq() {
+		return mSegments.size() == 0 ? mNextSeq : mSegments.get(0).firstSeq;
+	}
+
+	/*
+	 * Sequence number the next appended entry will get.
+	 */
+	public synchronized long nextSeq() {
+		return mNextSeq;
+	}
+
+	/*
+	 * Reads up to max entries starting at sequence number from (or the oldest one
+	 * still around, if from has been rotated away) into out. Returns the sequence
+	 * number following the last entry read.
+	 */
+	public synchronized long read(long from, int max, List<LogEntry> out) {
+		from = Math.max(from, firstSeq());
+		int i = segmentIndex(from);
+
+		if (i < 0) {
+			return from;
+		}
+
+		long seq = from;
+		int read = 0;
+
+		for (; i < mSegments.size() && read < max; i++) {
+			Segment seg = mSegments.get(i);
+			int pos = seek(seg, seq);
+
+			while (seq < seg.firstSeq + seg.count && read < max) {
+				pos = readRecord(seg.buf, pos, seq, out);
+				seq++;
+				read++;
+			}
+		}
+
+		return seq;
+	}
+
+	/*
+	 * Sequence number of the first entry received at or after time, nextSeq() if there
+	 * is none.
+	 */
+	public synchronized long seek(long time) {
+		for (int i = mSegments.size() - 1; i >= 0; i--) {
+			Segment seg = mSegments.get(i);
+
+			if (seg.count == 0 || seg.indexTime[0] >= time) {
+				continue;
+			}
+
+			// last indexed record before time, then scan forward from it.
+			int lo = 0;
+			int hi = seg.indexSize - 1;
+
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+
+				if (seg.indexTime[mid] < time) {
+					lo = mid;
+				} else {
+					hi = mid - 1;
+				}
+			}
+
+			long seq = seg.firstSeq + (long) lo * INDEX_STRIDE;
+			int pos = seg.indexPos[lo];
+
+			while (seq < seg.firstSeq + seg.count && seg.buf.getLong(pos + 4) < time) {
+				pos += RECORD_HEADER + seg.buf.getInt(pos) - 1;
+				seq++;
+			}
+
+			return seq;
+		}
+
+		return firstSeq();
+	}
+
+	/*
+	 * Walks the store from sequence number from onwards, a chunk at a time, so even
+	 * hours of history can be streamed out with only a chunk on the heap.
+	 */
+	public Iterator<LogEntry> iterator(final long from) {
+		return new Iterator<LogEntry>() {
+			private final ArrayList<LogEntry> mChunk = new ArrayList<LogEntry>(256);
+			private long mSeq = from;
+			private int mPos = 0;
+
+			public boolean hasNext() {
+				if (mPos < mChunk.size()) {
+					return true;
+				}
+
+				mChunk.clear();
+				mPos = 0;
+				mSeq = read(mSeq, 256, mChunk);
+				return mChunk.size() > 0;
+			}
+
+			public LogEntry next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				return mChunk.get(mPos++);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/*
+	 * Deletes every segment. Sequence numbers keep counting from where they were.
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < mSegments.size(); i++) {
+			mSegments.get(i).file.delete();
+		}
+
+		mSegments.clear();
+	}
+
+	public synchronized void close() {
+		for (int i = 0; i < mSegments.size(); i++) {
+			mSegments.get(i).buf.force();
+		}
+	}
+
+	private int segmentIndex(long seq) {
+		for (int i = mSegments.size() - 1; i >= 0; i--) {
+			Segment seg = mSegments.get(i);
+
+			if (seq >= seg.firstSeq) {
+				return seq < seg.firstSeq + seg.count ? i : -1;
+			}
+		}
+
+		return -1;
+	}
+
+	/*
+	 * Byte offset of record seq within seg, or of the first record if seq comes
+	 * before it.
+	 */
+	private int seek(Segment seg, long seq) {
+		if (seq <= seg.firstSeq) {
+			return 0;
+		}
+
+		int k = (int) ((seq - seg.firstSeq) / INDEX_STRIDE);
+		int pos = seg.indexPos[k];
+
+		for (long s = seg.firstSeq + (long) k * INDEX_STRIDE; s < seq; s++) {
+			pos += RECORD_HEADER + seg.buf.getInt(pos) - 1;
+		}
+
+		return pos;
+	}
+
+	private int readRecord(MappedByteBuffer buf, int pos, long seq, List<LogEntry> out) {
+		int len = buf.getInt(pos) - 1;
+		long received = buf.getLong(pos + 4);
+		long time = buf.getLong(pos + 12);
+
+		if (mBytes.length < len) {
+			mBytes = new byte[len * 2];
+			mChars = new char[len * 2];
+		}
+
+		buf.position(pos + RECORD_HEADER);
+		buf.get(mBytes, 0, len);
+		int n = Utf8.decode(mBytes, 0, len, mChars, 0);
+		LogEntry entry = mParser.parse(new String(mChars, 0, n), time);
+		entry.received = received;
+		entry.seq = seq;
+		out.add(entry);
+
+		return pos + RECORD_HEADER + len;
+	}
+
+	private Segment roll() throws IOException {
+		Segment seg = map(mNextSeq);
+		mSegments.add(seg);
+
+		while (mSegments.size() > mMaxSegments) {
+			mSegments.remove(0).file.delete();
+		}
+
+		return seg;
+	}
+
+	private Segment map(long firstSeq) throws IOException {
+		File file = new File(mDir, String.format("%016x", firstSeq) + SUFFIX);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+		try {
+			FileChannel channel = raf.getChannel();
+			return new Segment(firstSeq, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize));
+		} finally {
+			// the mapping stays valid after the file is closed.
+			raf.close();
+		}
+	}
+
+	/*
+	 * Maps the segments left from an earlier run and counts their records. Anything
+	 * that doesn't parse as a segment name is left alone.
+	 */
+	private void recover() throws IOException {
+		String[] names = mDir.list();
+
+		if (names == null) {
+			return;
+		}
+
+		Arrays.sort(names);
+
+		for (int i = 0; i < names.length; i++) {
+			if (!names[i].endsWith(SUFFIX) || names[i].length() != 16 + SUFFIX.length()) {
+				continue;
+			}
+
+			long firstSeq;
+
+			try {
+				firstSeq = Long.parseLong(names[i].substring(0, 16), 16);
+			} catch (NumberFormatException e) {
+				continue;
+			}
+
+			Segment seg = map(firstSeq);
+			int pos = 0;
+			int len;
+
+			while (pos + RECORD_HEADER <= mSegmentSize && (len = seg.buf.getInt(pos)) > 0
+					&& pos + RECORD_HEADER + len - 1 <= mSegmentSize) {
+				mLastReceived = seg.buf.getLong(pos + 4);
+				seg.added(pos, mLastReceived);
+				pos += RECORD_HEADER + len - 1;
+			}
+
+			seg.end = pos;
+			mSegments.add(seg);
+			mNextSeq = firstSeq + seg.count;
+		}
+
+		while (mSegments.size() > mMaxSegments) {
+			mSegments.remove(0).file.delete();
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * Streams the log to whoever connects, one client at a time; a new client replaces
+ * the old one. Where clients come from is up to the Transport: on the device it's a
+ * LocalSocketTransport, a local (abstract namespace) socket, which from a desktop is
+ *
+ *     adb forward tcp:5039 localabstract:logger
+ *     nc localhost 5039
+ *
+ * Nothing is queued while nobody is listening, and a full queue drops the oldest
+ * lines since a tail wants the latest.
+ */
+public class SocketSink extends StreamSink {
+	public static final String DEFAULT_NAME = "logger";
+	public static final int QUEUE_LINES = 4096;
+
+	/*
+	 * Hands out clients. accept() blocks until the next one connects and returns its
+	 * stream, closing which hangs up on it. close() stops listening and makes a
+	 * blocked accept() throw.
+	 */
+	public interface Transport {
+		void open() throws IOException;
+
+		OutputStream accept() throws IOException;
+
+		void close();
+	}
+
+	private final String mName;
+	private final Transport mTransport;
+	private final Object mClientLock = new Object();
+	private volatile OutputStream mClient;
+	private volatile boolean mReleased = false;
+
+	public SocketSink(String name, Transport transport) {
+		super(name, QUEUE_LINES, DROP_OLDEST);
+		mName = name;
+		mTransport = transport;
+	}
+
+	@Override
+	public void publish(LogEntry entry) {
+		if (mClient != null) {
+			super.publish(entry);
+		}
+	}
+
+	/*
+	 * Whether a client is connected and lines are going out.
+	 */
+	public boolean hasClient() {
+		return mClient != null;
+	}
+
+	@Override
+	protected void open() throws IOException {
+		mTransport.open();
+
+		new Thread(new Runnable() {
+			public void run() {
+				accept();
+			}
+		}, "LogSink-" + mName + "-accept").start();
+	}
+
+	@Override
+	protected void write(byte[] b, int off, int len) {
+		OutputStream client = mClient;
+
+		if (client == null) {
+			return;
+		}
+
+		try {
+			client.write(b, off, len);
+			client.flush();
+		} catch (IOException e) {
+			// the client went away, wait for the next one.
+			warn("Log socket client disconnected");
+			drop(client);
+		}
+	}
+
+	@Override
+	protected void release() {
+		mReleased = true;
+		drop(mClient);
+		mTransport.close();
+	}
+
+	private void accept() {
+		while (!mReleased) {
+			try {
+				OutputStream client = mTransport.accept();
+
+				if (mReleased) {
+					client.close();
+					break;
+				}
+
+				OutputStream old;
+
+				synchronized (mClientLock) {
+					old = mClient;
+					mClient = client;
+				}
+
+				drop(old);
+			} catch (IOException e) {
+				if (!mReleased) {
+					warn("Log socket accept failed: " + e.toString());
+				}
+
+				break;
+			}
+		}
+	}
+
+	private void drop(OutputStream client) {
+		if (client == null) {
+			return;
+		}
+
+		synchronized (mClientLock) {
+			if (mClient == client) {
+				mClient = null;
+			}
+		}
+
+		try {
+			client.close();
+		} catch (IOException e) {
+			warn("Error closing the log socket client: " + e.toString());
+		}
+	}
+}
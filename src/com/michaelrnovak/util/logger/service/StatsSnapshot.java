@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/*
+ * Log volume over the last few seconds as counted by LogStats: the totals, lines per
+ * level (indexed by LogFilter.priority()), and the busiest tags and pids, busiest
+ * first, as parallel arrays.
+ */
+public class StatsSnapshot implements Parcelable {
+	public final int seconds;
+	public final int lines;
+	public final long bytes;
+	public final int[] levelLines;
+	public final String[] tags;
+	public final int[] tagLines;
+	public final int[] tagBytes;
+	public final int[] pids;
+	public final int[] pidLines;
+	public final int[] pidBytes;
+
+	public StatsSnapshot(int seconds, int lines, long bytes, int[] levelLines, String[] tags, int[] tagLines,
+			int[] tagBytes, int[] pids, int[] pidLines, int[] pidBytes) {
+		this.seconds = seconds;
+		this.lines = lines;
+		this.bytes = bytes;
+		this.levelLines = levelLines;
+		this.tags = tags;
+		this.tagLines = tagLines;
+		this.tagBytes = tagBytes;
+		this.pids = pids;
+		this.pidLines = pidLines;
+		this.pidBytes = pidBytes;
+	}
+
+	public static final Parcelable.Creator<StatsSnapshot> CREATOR = new Parcelable.Creator<StatsSnapshot>() {
+		public StatsSnapshot createFromParcel(Parcel in) {
+			return new StatsSnapshot(in.readInt(), in.readInt(), in.readLong(), in.createIntArray(),
+					in.createStringArray(), in.createIntArray(), in.createIntArray(), in.createIntArray(),
+					in.createIntArray(), in.createIntArray());
+		}
+
+		public StatsSnapshot[] newArray(int size) {
+			return new StatsSnapshot[size];
+		}
+	};
+
+	public int describeContents() {
+		return 0;
+	}
+
+	public void writeToParcel(Parcel out, int flags) {
+		out.writeInt(seconds);
+		out.writeInt(lines);
+		out.writeLong(bytes);
+		out.writeIntArray(levelLines);
+		out.writeStringArray(tags);
+		out.writeIntArray(tagLines);
+		out.writeIntArray(tagBytes);
+		out.writeIntArray(pids);
+		out.writeIntArray(pidLines);
+		out.writeIntArray(pidBytes);
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * A sink writing lines of UTF-8 text to some byte stream on a thread of its own.
+ * publish() only puts the entry in a bounded queue; once that's full the policy
+ * decides whether the oldest queued line or the new one is dropped, so a slow disk
+ * or client costs lines of its own output and nothing else. The worker encodes a
+ * batch at a time into one buffer, writes a "lines dropped" note where lines went
+ * missing, and hands whole buffers to write().
+ */
+public abstract class StreamSink implements LogSink, Runnable {
+	public static final int DROP_OLDEST = 0;
+	public static final int DROP_NEWEST = 1;
+	public static final int BUFFER_SIZE = 16 * 1024;
+	private static final int BATCH_LINES = 64;
+	private final String mName;
+	private final Object[] mQueue;
+	private final int mPolicy;
+	private final ByteBuffer mBuf = ByteBuffer.allocate(BUFFER_SIZE);
+	private int mHead = 0;
+	private int mSize = 0;
+	private int mDropped = 0;
+	private int mTotalDropped = 0;
+	private boolean mClosed = false;
+
+	protected StreamSink(String name, int capacity, int policy) {
+		mName = name;
+		mQueue = new Object[capacity];
+		mPolicy = policy;
+	}
+
+	public void start() {
+		new Thread(this, "LogSink-" + mName).start();
+	}
+
+	public synchronized void publish(LogEntry entry) {
+		if (mClosed) {
+			return;
+		}
+
+		if (mSize == mQueue.length) {
+			mDropped++;
+			mTotalDropped++;
+
+			if (mPolicy == DROP_NEWEST) {
+				return;
+			}
+
+			mQueue[mHead] = null;
+			mHead = (mHead + 1) % mQueue.length;
+			mSize--;
+		}
+
+		mQueue[(mHead + mSize) % mQueue.length] = entry;
+		mSize++;
+
+		if (mSize == 1) {
+			notify();
+		}
+	}
+
+	/*
+	 * Lines dropped since the sink started.
+	 */
+	public synchronized int getDropped() {
+		return mTotalDropped;
+	}
+
+	/*
+	 * Stops the worker once it has written out what's queued.
+	 */
+	public synchronized void close() {
+		mClosed = true;
+		notify();
+	}
+
+	/*
+	 * Sets up the output, on the worker thread before anything is written.
+	 */
+	protected abstract void open() throws IOException;
+
+	/*
+	 * Writes out len bytes of whole lines. An IOException stops the sink.
+	 */
+	protected abstract void write(byte[] b, int off, int len) throws IOException;
+
+	/*
+	 * Releases the output, on the worker thread once it's done.
+	 */
+	protected abstract void release();
+
+	/*
+	 * Reports trouble with the output. LogProcessor's sinks send it to the Android log.
+	 */
+	protected void warn(String message) {
+		System.err.println(message);
+	}
+
+	public void run() {
+		LogEntry[] batch = new LogEntry[BATCH_LINES];
+
+		try {
+			open();
+
+			while (true) {
+				int dropped;
+				int n;
+
+				synchronized (this) {
+					while (mSize == 0 && !mClosed) {
+						wait();
+					}
+
+					if (mSize == 0) {
+						break;
+					}
+
+					dropped = mDropped;
+					mDropped = 0;
+					n = Math.min(mSize, batch.length);
+
+					for (int i = 0; i < n; i++) {
+						batch[i] = (LogEntry) mQueue[mHead];
+						mQueue[mHead] = null;
+						mHead = (mHead + 1) % mQueue.length;
+					}
+
+					mSize -= n;
+				}
+
+				if (dropped > 0) {
+					put("--- " + dropped + " lines dropped ---");
+				}
+
+				for (int i = 0; i < n; i++) {
+					put(batch[i].line);
+					batch[i] = null;
+				}
+
+				// keep filling the buffer while there's a backlog.
+				if (n < batch.length) {
+					drain();
+				}
+			}
+
+			drain();
+		} catch (IOException e) {
+			warn("Log output " + mName + " failed: " + e.toString());
+		} catch (InterruptedException e) {
+			warn("Log output " + mName + " interrupted");
+		} finally {
+			synchronized (this) {
+				mClosed = true;
+				mSize = 0;
+			}
+
+			release();
+		}
+	}
+
+	private void put(String line) throws IOException {
+		int len = Utf8.length(line) + 1;
+
+		if (mBuf.remaining() < len) {
+			drain();
+		}
+
+		if (len > BUFFER_SIZE) {
+			ByteBuffer big = ByteBuffer.allocate(len);
+			Utf8.encode(line, big);
+			big.put((byte) '\n');
+			write(big.array(), 0, len);
+			return;
+		}
+
+		Utf8.encode(line, mBuf);
+		mBuf.put((byte) '\n');
+	}
+
+	private void drain() throws IOException {
+		if (mBuf.position() > 0) {
+			write(mBuf.array(), 0, mBuf.position());
+			mBuf.clear();
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+/*
+ * Dictionary of every tag seen so far. Each tag gets a small int id the first time it
+ * shows up and a running count of the lines logged under it. Lookups hash straight
+ * off the characters of the log line (ignoring case, like the tag filter always has)
+ * so a tag that's already known costs no allocation at all.
+ */
+public class TagTable {
+	public static final int NO_TAG = -1;
+	private int[] mSlots;
+	private String[] mNames;
+	private int[] mCounts;
+	private int mSize = 0;
+
+	public TagTable() {
+		mSlots = new int[256];
+		mNames = new String[128];
+		mCounts = new int[128];
+		fill(mSlots);
+	}
+
+	/*
+	 * Returns the id for the tag found between start and end of line, registering it
+	 * if needed, and counts one more line for it.
+	 */
+	public synchronized int add(String line, int start, int end) {
+		int id = find(line, start, end, true);
+		mCounts[id]++;
+		return id;
+	}
+
+	/*
+	 * Same as add() but for a tag still sitting in a byte buffer, as read from the binary
+	 * log format. Tags are treated as ISO-8859-1, which covers what logcat ever sees.
+	 */
+	public synchronized int add(byte[] buf, int start, int end) {
+		int mask = mSlots.length - 1;
+		int slot = hash(buf, start, end) & mask;
+
+		while (mSlots[slot] != NO_TAG) {
+			int id = mSlots[slot];
+
+			if (regionMatches(mNames[id], buf, start, end)) {
+				mCounts[id]++;
+				return id;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		char[] chars = new char[end - start];
+
+		for (int i = start; i < end; i++) {
+			chars[i - start] = (char) (buf[i] & 0xff);
+		}
+
+		return add(new String(chars), 0, chars.length);
+	}
+
+	/*
+	 * Like add(), but without counting a line. For entries read back from storage,
+	 * which were already counted when they first came in.
+	 */
+	public synchronized int intern(String line, int start, int end) {
+		return find(line, start, end, true);
+	}
+
+	/*
+	 * Returns the id for tag, or NO_TAG if it hasn't been seen and create is false.
+	 */
+	public synchronized int getId(String tag, boolean create) {
+		return find(tag, 0, tag.length(), create);
+	}
+
+	public synchronized String getName(int id) {
+		return id >= 0 && id < mSize ? mNames[id] : "";
+	}
+
+	public synchronized int size() {
+		return mSize;
+	}
+
+	public synchronized String[] getNames() {
+		String[] names = new String[mSize];
+		System.arraycopy(mNames, 0, names, 0, mSize);
+		return names;
+	}
+
+	public synchronized int[] getCounts() {
+		int[] counts = new int[mSize];
+		System.arraycopy(mCounts, 0, counts, 0, mSize);
+		return counts;
+	}
+
+	private int find(String s, int start, int end, boolean create) {
+		int mask = mSlots.length - 1;
+		int slot = hash(s, start, end) & mask;
+
+		while (mSlots[slot] != NO_TAG) {
+			String name = mNames[mSlots[slot]];
+
+			if (name.length() == end - start && name.regionMatches(true, 0, s, start, end - start)) {
+				return mSlots[slot];
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		if (!create) {
+			return NO_TAG;
+		}
+
+		if (mSize == mNames.length) {
+			String[] names = new String[mSize * 2];
+			int[] counts = new int[mSize * 2];
+			System.arraycopy(mNames, 0, names, 0, mSize);
+			System.arraycopy(mCounts, 0, counts, 0, mSize);
+			mNames = names;
+			mCounts = counts;
+		}
+
+		int id = mSize++;
+		mNames[id] = s.substring(start, end);
+		mSlots[slot] = id;
+
+		if (mSize * 2 > mSlots.length) {
+			rehash();
+		}
+
+		return id;
+	}
+
+	private void rehash() {
+		mSlots = new int[mSlots.length * 2];
+		fill(mSlots);
+		int mask = mSlots.length - 1;
+
+		for (int id = 0; id < mSize; id++) {
+			String name = mNames[id];
+			int slot = hash(name, 0, name.length()) & mask;
+
+			while (mSlots[slot] != NO_TAG) {
+				slot = (slot + 1) & mask;
+			}
+
+			mSlots[slot] = id;
+		}
+	}
+
+	private static int hash(String s, int start, int end) {
+		int h = 0;
+
+		for (int i = start; i < end; i++) {
+			h = 31 * h + Character.toLowerCase(s.charAt(i));
+		}
+
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(byte[] buf, int start, int end) {
+		int h = 0;
+
+		for (int i = start; i < end; i++) {
+			h = 31 * h + Character.toLowerCase((char) (buf[i] & 0xff));
+		}
+
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean regionMatches(String name, byte[] buf, int start, int end) {
+		if (name.length() != end - start) {
+			return false;
+		}
+
+		for (int i = start; i < end; i++) {
+			char c = (char) (buf[i] & 0xff);
+			char n = name.charAt(i - start);
+
+			if (c != n && Character.toLowerCase(c) != Character.toLowerCase(n)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static void fill(int[] slots) {
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = NO_TAG;
+		}
+	}
+}
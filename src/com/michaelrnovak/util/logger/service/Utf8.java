@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.nio.ByteBuffer;
+
+/*
+ * UTF-8 straight between Strings and buffers we already own, without going through
+ * a CharsetEncoder/Decoder and the garbage they leave behind per call.
+ */
+public final class Utf8 {
+
+	private Utf8() {
+	}
+
+	/*
+	 * Number of bytes s takes encoded.
+	 */
+	public static int length(String s) {
+		return length(s, 0, s.length());
+	}
+
+	/*
+	 * Number of bytes s[from, end) takes encoded.
+	 */
+	public static int length(String s, int from, int end) {
+		int bytes = end - from;
+
+		for (int i = from; i < end; i++) {
+			char c = s.charAt(i);
+
+			if (c >= 0x800) {
+				if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+					bytes += 2;
+					i++;
+				} else {
+					bytes += 2;
+				}
+			} else if (c >= 0x80) {
+				bytes += 1;
+			}
+		}
+
+		return bytes;
+	}
+
+	/*
+	 * How many chars from the start of s fit in max bytes once encoded, never splitting
+	 * a surrogate pair.
+	 */
+	public static int fit(String s, int max) {
+		int len = s.length();
+		int bytes = 0;
+		int i = 0;
+
+		while (i < len) {
+			char c = s.charAt(i);
+			int chars = 1;
+			int size = 1;
+
+			if (c >= 0x800) {
+				if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+					chars = 2;
+					size = 4;
+				} else {
+					size = 3;
+				}
+			} else if (c >= 0x80) {
+				size = 2;
+			}
+
+			if (bytes + size > max) {
+				break;
+			}
+
+			bytes += size;
+			i += chars;
+		}
+
+		return i;
+	}
+
+	/*
+	 * Encodes s into out, which must have length(s) bytes remaining.
+	 */
+	public static void encode(String s, ByteBuffer out) {
+		int len = s.length();
+
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+
+			if (c < 0x80) {
+				out.put((byte) c);
+			} else if (c < 0x800) {
+				out.put((byte) (0xc0 | (c >> 6)));
+				out.put((byte) (0x80 | (c & 0x3f)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				out.put((byte) (0xf0 | (cp >> 18)));
+				out.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+				out.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+				out.put((byte) (0x80 | (cp & 0x3f)));
+			} else {
+				out.put((byte) (0xe0 | (c >> 12)));
+				out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+				out.put((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+	}
+
+	/*
+	 * Decodes b[from, end) into c starting at n and returns the new end of c, which
+	 * needs at least end - from chars of room. Malformed input turns into U+FFFD
+	 * rather than an exception.
+	 */
+	public static int decode(byte[] b, int from, int end, char[] c, int n) {
+		int i = from;
+
+		while (i < end) {
+			int b0 = b[i++] & 0xff;
+
+			if (b0 < 0x80) {
+				c[n++] = (char) b0;
+			} else if (b0 >= 0xc2 && b0 < 0xe0 && i < end) {
+				c[n++] = (char) (((b0 & 0x1f) << 6) | (b[i++] & 0x3f));
+			} else if (b0 >= 0xe0 && b0 < 0xf0 && i + 1 < end) {
+				c[n++] = (char) (((b0 & 0x0f) << 12) | ((b[i] & 0x3f) << 6) | (b[i + 1] & 0x3f));
+				i += 2;
+			} else if (b0 >= 0xf0 && b0 < 0xf5 && i + 2 < end) {
+				int cp = ((b0 & 0x07) << 18) | ((b[i] & 0x3f) << 12) | ((b[i + 1] & 0x3f) << 6) | (b[i + 2] & 0x3f);
+				cp -= 0x10000;
+				c[n++] = (char) (0xd800 + (cp >> 10));
+				c[n++] = (char) (0xdc00 + (cp & 0x3ff));
+				i += 3;
+			} else {
+				c[n++] = '\ufffd';
+			}
+		}
+
+		return n;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+/*
+ * What the list is showing: the store sequence numbers of the entries that passed the
+ * filter, in order, in a fixed size ring of longs. Positions in the view are absolute
+ * and only ever count up, like the ring buffer's sequence numbers, so a position the
+ * UI holds on to keeps meaning the same line until it falls off the front.
+ */
+public class ViewIndex {
+	private final long[] mSeqs;
+	private long mStart = 0;
+	private long mEnd = 0;
+
+	public ViewIndex(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+
+		mSeqs = new long[capacity];
+	}
+
+	public synchronized void add(long seq) {
+		mSeqs[(int) (mEnd % mSeqs.length)] = seq;
+		mEnd++;
+
+		if (mEnd - mStart > mSeqs.length) {
+			mStart = mEnd - mSeqs.length;
+		}
+	}
+
+	/*
+	 * Position of the oldest line still in the view.
+	 */
+	public synchronized long first() {
+		return mStart;
+	}
+
+	/*
+	 * Position the next line added will get.
+	 */
+	public synchronized long end() {
+		return mEnd;
+	}
+
+	/*
+	 * Empties the view; positions carry on from where they were.
+	 */
+	public synchronized void clear() {
+		mStart = mEnd;
+	}
+
+	/*
+	 * Drops the lines whose entries the store has rotated away.
+	 */
+	public synchronized void evict(long firstSeq) {
+		while (mStart < mEnd && mSeqs[(int) (mStart % mSeqs.length)] < firstSeq) {
+			mStart++;
+		}
+	}
+
+	/*
+	 * Copies the sequence numbers at positions from, from + 1, ... into out, stopping at
+	 * the end of the view. Positions already dropped come out as LogEntry.NO_SEQ.
+	 * Returns how many were written.
+	 */
+	public synchronized int get(long from, long[] out) {
+		int n = (int) Math.max(0, Math.min(out.length, mEnd - from));
+
+		for (int i = 0; i < n; i++) {
+			long pos = from + i;
+			out[i] = pos < mStart ? LogEntry.NO_SEQ : mSeqs[(int) (pos % mSeqs.length)];
+		}
+
+		return n;
+	}
+}
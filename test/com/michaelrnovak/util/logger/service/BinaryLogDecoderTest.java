@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/*
+ * Runs the decoder over logcat-main.bin, six records in the logger_entry layout
+ * "logcat -B" writes (one with the later 24 byte header) and a seventh cut off
+ * halfway, the way a capture ends when logcat is killed mid-write.
+ */
+public class BinaryLogDecoderTest extends TestCase {
+	private static final String[] LINES = {
+		"I/ActivityManager(   59): Start proc com.android.email for service "
+				+ "com.android.email/.service.MailService: pid=312 uid=10023 gids={3003}",
+		"D/dalvikvm(  312): GC_EXPLICIT freed 1024 objects / 65536 bytes in 45ms",
+		"E/AndroidRuntime(  312): FATAL EXCEPTION: main",
+		"W/WifiService(   59): acquireWifiLockLocked: WifiLock{NetworkLocationProvider type=2}",
+		"I/Logger( 1234): h\u00e9llo w\u00f6rld",
+		"V/Pwr(    8): battery 87%",
+	};
+
+	private byte[] fixture() throws IOException {
+		InputStream in = getClass().getResourceAsStream("logcat-main.bin");
+		assertNotNull(in);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int n;
+
+		while ((n = in.read(buf)) > 0) {
+			out.write(buf, 0, n);
+		}
+
+		in.close();
+		return out.toByteArray();
+	}
+
+	public void testDecodesCapture() throws IOException {
+		TagTable tags = new TagTable();
+		BinaryLogDecoder decoder = new BinaryLogDecoder(new ByteArrayInputStream(fixture()), tags);
+		List<LogEntry> entries = new ArrayList<LogEntry>();
+
+		while (decoder.next()) {
+			entries.add(decoder.toEntry());
+		}
+
+		assertEquals(LINES.length, entries.size());
+
+		for (int i = 0; i < LINES.length; i++) {
+			assertEquals(LINES[i], entries.get(i).line);
+		}
+
+		LogEntry first = entries.get(0);
+		assertEquals('I', first.level);
+		assertEquals("ActivityManager", first.tag);
+		assertEquals(59, first.pid);
+		assertEquals(1287400000123L, first.time);
+		assertTrue(first.getMessage().startsWith("Start proc"));
+
+		assertEquals(1287400002999L, entries.get(3).time);
+		assertEquals(tags.getId("dalvikvm", false), entries.get(1).tagId);
+	}
+
+	public void testEntriesMatchTextParser() throws IOException {
+		BinaryLogDecoder decoder = new BinaryLogDecoder(new ByteArrayInputStream(fixture()), new TagTable());
+		LogParser parser = new LogParser(new TagTable());
+
+		while (decoder.next()) {
+			LogEntry binary = decoder.toEntry();
+			LogEntry text = parser.parse(binary.line, binary.time);
+			assertEquals(text.level, binary.level);
+			assertEquals(text.tag, binary.tag);
+			assertEquals(text.pid, binary.pid);
+			assertEquals(text.headerEnd, binary.headerEnd);
+			assertEquals(text.msgStart, binary.msgStart);
+		}
+	}
+
+	public void testHeaderFieldsWithoutText() throws IOException {
+		TagTable tags = new TagTable();
+		BinaryLogDecoder decoder = new BinaryLogDecoder(new ByteArrayInputStream(fixture()), tags);
+		int errors = 0;
+
+		while (decoder.next()) {
+			if (decoder.getLevel() == 'E') {
+				errors++;
+				assertEquals(312, decoder.getPid());
+				assertEquals("AndroidRuntime", tags.getName(decoder.getTagId()));
+				assertEquals("FATAL EXCEPTION: main".length(), decoder.getMessageLength());
+			}
+		}
+
+		assertEquals(1, errors);
+	}
+
+	public void testCorruptHeader() throws IOException {
+		byte[] bytes = fixture();
+		// a header size no logger has ever used.
+		bytes[2] = 100;
+
+		try {
+			new BinaryLogDecoder(new ByteArrayInputStream(bytes), new TagTable()).next();
+			fail("corrupt header decoded");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
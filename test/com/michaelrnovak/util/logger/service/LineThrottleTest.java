@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import junit.framework.TestCase;
+
+public class LineThrottleTest extends TestCase {
+	private LogParser mParser;
+	private LineThrottle mThrottle;
+	private LogEntry mChatty;
+	private LogEntry mQuiet;
+
+	@Override
+	protected void setUp() {
+		mParser = new LogParser(new TagTable());
+		mThrottle = new LineThrottle();
+		mChatty = mParser.parse("I/Chatty(  1): again", 0);
+		mQuiet = mParser.parse("I/Quiet(  2): once", 0);
+	}
+
+	private int admitted(LogEntry entry, int lines, long now) {
+		int admitted = 0;
+
+		for (int i = 0; i < lines; i++) {
+			if (mThrottle.admit(entry, now)) {
+				admitted++;
+			}
+		}
+
+		return admitted;
+	}
+
+	public void testUnlimitedByDefault() {
+		assertEquals(1000, admitted(mChatty, 1000, 1000));
+		assertEquals(0, mThrottle.getSuppressedCounts()[mChatty.tagId]);
+	}
+
+	public void testBurstThenDrop() {
+		mThrottle.setRate(10, 5);
+		assertEquals(5, admitted(mChatty, 20, 1000));
+		assertEquals(15, mThrottle.getSuppressedCounts()[mChatty.tagId]);
+	}
+
+	public void testRefillsAtRate() {
+		mThrottle.setRate(10, 5);
+		admitted(mChatty, 5, 1000);
+
+		// 10 a second is one every 100 ms.
+		assertEquals(0, admitted(mChatty, 1, 1050));
+		assertEquals(1, admitted(mChatty, 3, 1150));
+		assertEquals(3, admitted(mChatty, 5, 1450));
+		// never more than the burst, however long the tag was quiet.
+		assertEquals(5, admitted(mChatty, 10, 60000));
+	}
+
+	public void testBucketsArePerTag() {
+		mThrottle.setRate(10, 5);
+		assertEquals(5, admitted(mChatty, 50, 1000));
+		assertEquals(5, admitted(mQuiet, 5, 1000));
+
+		int[] suppressed = mThrottle.getSuppressedCounts();
+		assertEquals(45, suppressed[mChatty.tagId]);
+		assertEquals(0, suppressed[mQuiet.tagId]);
+	}
+
+	public void testUntaggedLinesPass() {
+		mThrottle.setRate(1, 1);
+		assertEquals(100, admitted(mParser.parse("no header at all", 0), 100, 1000));
+	}
+
+	public void testSetRateFillsBuckets() {
+		mThrottle.setRate(10, 5);
+		admitted(mChatty, 5, 1000);
+		mThrottle.setRate(10, 5);
+		assertEquals(5, admitted(mChatty, 5, 1000));
+	}
+
+	public void testRepeatsCountAsSuppressed() {
+		mThrottle.suppressed(mChatty);
+		mThrottle.suppressed(mChatty);
+		assertEquals(2, mThrottle.getSuppressedCounts()[mChatty.tagId]);
+	}
+}
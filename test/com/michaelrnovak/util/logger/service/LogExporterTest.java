@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LogExporterTest extends TestCase {
+	// enough for many store chunks and several trips through the export buffer.
+	private static final int LINES = 20000;
+	private File mDir;
+	private LogPipeline mPipeline;
+
+	@Override
+	protected void setUp() throws IOException {
+		mDir = File.createTempFile("export", "");
+		mDir.delete();
+		mPipeline = new LogPipeline();
+		mPipeline.openStore(mDir);
+		StringBuilder text = new StringBuilder();
+
+		for (int i = 0; i < LINES; i++) {
+			text.append(i % 3 == 0 ? 'E' : 'I').append('/').append(i % 2 == 0 ? "Even" : "Odd")
+					.append("(  1): line ").append(i).append('\n');
+		}
+
+		mPipeline.read(new LogPipeline.Input("main", 250, false), new ByteArrayInputStream(text.toString()
+				.getBytes()));
+	}
+
+	@Override
+	protected void tearDown() {
+		mPipeline.close();
+		File[] files = mDir.listFiles();
+
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+
+		mDir.delete();
+	}
+
+	private List<String> export(LogExporter exporter, int tagId, int[] written) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		written[0] = mPipeline.export(exporter, tagId, Channels.newChannel(out), null);
+		List<String> lines = new ArrayList<String>();
+		String text = new String(out.toByteArray(), "UTF-8");
+		int start = 0;
+
+		for (int end = text.indexOf('\n'); end >= 0; end = text.indexOf('\n', start)) {
+			lines.add(text.substring(start, end));
+			start = end + 1;
+		}
+
+		assertEquals(text.length(), start);
+		return lines;
+	}
+
+	public void testEveryLineOnce() throws IOException {
+		int[] written = new int[1];
+		List<String> lines = export(new LogExporter(), TagTable.NO_TAG, written);
+
+		assertEquals(LINES, written[0]);
+		assertEquals(LINES, lines.size());
+
+		for (int i = 0; i < LINES; i++) {
+			assertTrue(lines.get(i).endsWith("): line " + i));
+		}
+	}
+
+	public void testFilteredLinesOnce() throws IOException {
+		mPipeline.setFilter(LogFilter.compile('E', null, null, LogFilter.PID_ALL, null, false, mPipeline.getTags()),
+				null);
+		int[] written = new int[1];
+		List<String> lines = export(new LogExporter(), mPipeline.getTags().getId("Even", false), written);
+
+		// error lines with an even number are every sixth one.
+		assertEquals((LINES + 5) / 6, written[0]);
+		assertEquals(written[0], lines.size());
+
+		for (int i = 0; i < lines.size(); i++) {
+			assertEquals("E/Even(  1): line " + (i * 6), lines.get(i));
+		}
+	}
+
+	public void testCancelled() throws IOException {
+		final LogExporter exporter = new LogExporter();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int written = mPipeline.export(exporter, TagTable.NO_TAG, Channels.newChannel(out),
+				new LogExporter.Progress() {
+					public void onProgress(int lines, int total) {
+						exporter.cancel();
+					}
+				});
+
+		assertEquals(-1, written);
+	}
+
+	public void testLineLongerThanBuffer() throws IOException {
+		StringBuilder big = new StringBuilder("I/Big(  1): ");
+
+		while (big.length() <= LogExporter.BUFFER_SIZE) {
+			big.append("0123456789");
+		}
+
+		List<LogEntry> entries = new ArrayList<LogEntry>();
+		LogParser parser = new LogParser(new TagTable(), false);
+		entries.add(parser.parse("I/Small(  1): before", 0));
+		entries.add(parser.parse(big.toString(), 0));
+		entries.add(parser.parse("I/Small(  1): after", 0));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(3, new LogExporter().export(entries, LogFilter.NONE, TagTable.NO_TAG,
+				Channels.newChannel(out), null));
+		assertEquals("I/Small(  1): before\n" + big + "\nI/Small(  1): after\n", new String(out.toByteArray(),
+				"UTF-8"));
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LogMergerTest extends TestCase {
+	private LogParser mParser = new LogParser(new TagTable(), false);
+
+	private LogRingBuffer<LogEntry> ring(String name, long[] times, long received) {
+		LogRingBuffer<LogEntry> ring = new LogRingBuffer<LogEntry>(16);
+
+		for (int i = 0; i < times.length; i++) {
+			LogEntry entry = mParser.parse("I/" + name + "(  1): " + i, times[i]);
+			entry.received = received + i;
+			ring.add(entry);
+		}
+
+		return ring;
+	}
+
+	public void testOrdersByRecordTime() {
+		List<LogRingBuffer<LogEntry>> rings = new ArrayList<LogRingBuffer<LogEntry>>();
+		// the radio backlog is read after main, but was logged in between.
+		rings.add(ring("Main", new long[] { 100, 300, 500 }, 1000));
+		rings.add(ring("Radio", new long[] { 200, 400 }, 2000));
+
+		List<LogEntry> merged = LogMerger.merge(rings);
+		assertEquals(5, merged.size());
+
+		for (int i = 0; i < merged.size(); i++) {
+			assertEquals(100 * (i + 1), merged.get(i).time);
+		}
+	}
+
+	public void testKeepsEachRingsOrder() {
+		List<LogRingBuffer<LogEntry>> rings = new ArrayList<LogRingBuffer<LogEntry>>();
+		// clock set back halfway through main.
+		rings.add(ring("Main", new long[] { 500, 600, 100, 200 }, 1000));
+		rings.add(ring("Radio", new long[] { 300 }, 2000));
+
+		List<LogEntry> merged = LogMerger.merge(rings);
+		assertEquals("I/Radio(  1): 0", merged.get(0).line);
+		assertEquals("I/Main(  1): 0", merged.get(1).line);
+		assertEquals("I/Main(  1): 1", merged.get(2).line);
+		assertEquals("I/Main(  1): 2", merged.get(3).line);
+		assertEquals("I/Main(  1): 3", merged.get(4).line);
+	}
+}
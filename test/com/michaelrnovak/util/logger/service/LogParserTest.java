@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import junit.framework.TestCase;
+
+public class LogParserTest extends TestCase {
+	private TagTable mTags;
+	private LogParser mParser;
+
+	@Override
+	protected void setUp() {
+		mTags = new TagTable();
+		mParser = new LogParser(mTags);
+	}
+
+	public void testBriefLine() {
+		LogEntry entry = mParser.parse("D/dalvikvm(  123): GC freed 10 objects", 42);
+		assertEquals('D', entry.level);
+		assertEquals("dalvikvm", entry.tag);
+		assertEquals(123, entry.pid);
+		assertEquals("GC freed 10 objects", entry.getMessage());
+		assertEquals(42, entry.time);
+		assertEquals(entry.tagId, mTags.getId("dalvikvm", false));
+	}
+
+	public void testPaddedTagIsTrimmed() {
+		LogEntry entry = mParser.parse("I/Tag     ( 1234): hello", 0);
+		assertEquals("Tag", entry.tag);
+		assertEquals(1234, entry.pid);
+		assertEquals("hello", entry.getMessage());
+	}
+
+	public void testTagWithoutPid() {
+		LogEntry entry = mParser.parse("W/Tag: no pid here", 0);
+		assertEquals('W', entry.level);
+		assertEquals("Tag", entry.tag);
+		assertEquals(-1, entry.pid);
+		assertEquals("no pid here", entry.getMessage());
+	}
+
+	public void testUnparsedLine() {
+		LogEntry entry = mParser.parse("<6>[    0.000000] Linux version 2.6.29", 0);
+		assertFalse(entry.hasHeader());
+		assertEquals(TagTable.NO_TAG, entry.tagId);
+		assertEquals("<6>[    0.000000] Linux version 2.6.29", entry.getMessage());
+	}
+
+	public void testTagsAreCounted() {
+		mParser.parse("I/One(  1): a", 0);
+		mParser.parse("I/One(  1): b", 0);
+		mParser.parse("I/Two(  1): c", 0);
+		assertEquals(2, mTags.getCounts()[mTags.getId("One", false)]);
+		assertEquals(1, mTags.getCounts()[mTags.getId("Two", false)]);
+		assertEquals(TagTable.NO_TAG, mTags.getId("Three", false));
+	}
+}
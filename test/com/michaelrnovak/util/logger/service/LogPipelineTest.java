@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LogPipelineTest extends TestCase {
+	private File mDir;
+
+	@Override
+	protected void setUp() throws IOException {
+		mDir = File.createTempFile("pipeline", "");
+		mDir.delete();
+	}
+
+	@Override
+	protected void tearDown() {
+		File[] files = mDir.listFiles();
+
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+
+		mDir.delete();
+	}
+
+	private static String lines(String tag, int from, int to) {
+		StringBuilder text = new StringBuilder();
+
+		for (int i = from; i < to; i++) {
+			text.append(i % 3 == 0 ? 'E' : 'I').append('/').append(tag).append("(  1): line ").append(i).append('\n');
+		}
+
+		return text.toString();
+	}
+
+	private static void read(LogPipeline pipeline, String buffer, String text) throws IOException {
+		pipeline.read(new LogPipeline.Input(buffer, 250, false), new ByteArrayInputStream(text.getBytes()));
+	}
+
+	private static List<LogEntry> view(LogPipeline pipeline) {
+		long[] range = pipeline.getLineRange();
+		return pipeline.page(range[0], (int) (range[1] - range[0]));
+	}
+
+	public void testRestartSkipsReplayedBacklog() throws IOException {
+		LogPipeline pipeline = new LogPipeline();
+		pipeline.openStore(mDir);
+		read(pipeline, "main", lines("Main", 0, 1000));
+		read(pipeline, "radio", lines("Radio", 0, 100));
+
+		// logcat starts over from the top of what's left in its buffer.
+		read(pipeline, "main", lines("Main", 200, 1500));
+		read(pipeline, "radio", lines("Radio", 0, 150));
+
+		List<LogEntry> lines = view(pipeline);
+		assertEquals(1650, lines.size());
+		assertEquals("I/Radio(  1): line 149", lines.get(lines.size() - 1).line);
+		pipeline.close();
+
+		// and again once the service has come back, going by the store.
+		pipeline = new LogPipeline();
+		pipeline.openStore(mDir);
+		read(pipeline, "main", lines("Main", 1000, 2000));
+		pipeline.setFilter(LogFilter.NONE, null);
+		assertEquals(2150, view(pipeline).size());
+		pipeline.close();
+	}
+
+	public void testRestartSkipsReplayedRepeats() throws IOException {
+		// the store only keeps one "repeated" line for the burst, logcat replays every copy.
+		StringBuilder burst = new StringBuilder();
+
+		for (int i = 0; i < 200; i++) {
+			burst.append("W/Main(  1): same again\n");
+		}
+
+		String text = lines("Main", 0, 100) + burst + lines("Main", 100, 300);
+		LogPipeline pipeline = new LogPipeline();
+		pipeline.openStore(mDir);
+		read(pipeline, "main", text);
+		List<LogEntry> lines = view(pipeline);
+		assertEquals(302, lines.size());
+		assertEquals("W/Main(  1): last message repeated 199 times", lines.get(101).line);
+		pipeline.close();
+
+		pipeline = new LogPipeline();
+		pipeline.openStore(mDir);
+		read(pipeline, "main", text + lines("Main", 300, 310));
+		pipeline.setFilter(LogFilter.NONE, null);
+		lines = view(pipeline);
+		assertEquals(312, lines.size());
+		assertEquals("E/Main(  1): line 309", lines.get(lines.size() - 1).line);
+		pipeline.close();
+	}
+
+	public void testSearchAfterReopen() throws IOException {
+		LogPipeline pipeline = new LogPipeline();
+		pipeline.openStore(mDir);
+		read(pipeline, "main", lines("Main", 0, 3000));
+		List<LogEntry> before = pipeline.search("ine 12", Long.MAX_VALUE, 1000);
+		// line 12, 120-129 and 1200-1299.
+		assertEquals(111, before.size());
+		pipeline.close();
+
+		pipeline = new LogPipeline();
+		pipeline.openStore(mDir);
+		// the store's old lines aren't indexed yet, they're read through.
+		assertSeqs(before, pipeline.search("ine 12", Long.MAX_VALUE, 1000));
+
+		pipeline.indexStore();
+		read(pipeline, "main", lines("Main", 3000, 3200));
+		List<LogEntry> after = pipeline.search("ine 12", Long.MAX_VALUE, 1000);
+		assertEquals(111, after.size());
+		assertSeqs(before, after);
+
+		List<LogEntry> page = pipeline.search("main", Long.MAX_VALUE, 50);
+		assertEquals(50, page.size());
+		assertEquals("I/Main(  1): line 3199", page.get(0).line);
+		page = pipeline.search("main", page.get(49).seq, 50);
+		assertEquals("I/Main(  1): line 3149", page.get(0).line);
+		pipeline.close();
+	}
+
+	private static void assertSeqs(List<LogEntry> expected, List<LogEntry> actual) {
+		assertEquals(expected.size(), actual.size());
+
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).seq, actual.get(i).seq);
+			assertEquals(expected.get(i).line, actual.get(i).line);
+		}
+	}
+
+	public void testRepeatsCollapse() throws IOException {
+		LogPipeline pipeline = new LogPipeline();
+		LogPipeline.Input main = new LogPipeline.Input("main", 250, false);
+		ArrayList<LogPipeline.Input> inputs = new ArrayList<LogPipeline.Input>();
+		inputs.add(main);
+		pipeline.setInputs(inputs);
+
+		// a different line ends the first run, the end of the stream the second.
+		pipeline.read(main, new ByteArrayInputStream(("I/Main(  1): first\n"
+				+ "W/Main(  1): again\nW/Main(  1): again\nW/Main(  1): again\n"
+				+ "I/Main(  1): between\n"
+				+ "W/Main(  1): again\nW/Main(  1): again\n").getBytes()));
+
+		List<LogEntry> lines = pipeline.mergedSnapshot();
+		assertEquals(6, lines.size());
+		assertEquals("W/Main(  1): again", lines.get(1).line);
+		assertEquals("W/Main(  1): last message repeated 2 times", lines.get(2).line);
+		assertEquals('W', lines.get(2).level);
+		assertEquals("Main", lines.get(2).tag);
+		assertEquals("I/Main(  1): between", lines.get(3).line);
+		assertEquals("W/Main(  1): again", lines.get(4).line);
+		assertEquals("W/Main(  1): last message repeated 1 times", lines.get(5).line);
+		assertEquals(3, pipeline.getThrottle().getSuppressedCounts()[pipeline.getTags().getId("Main", false)]);
+	}
+
+	public void testRateLimitDropsChattyTag() throws IOException {
+		LogPipeline pipeline = new LogPipeline();
+		pipeline.getThrottle().setRate(10, 10);
+		StringBuilder text = new StringBuilder();
+
+		for (int i = 0; i < 100; i++) {
+			text.append("I/Chatty(  1): line ").append(i).append('\n');
+			text.append("I/Quiet(  2): line ").append(i).append('\n');
+		}
+
+		LogPipeline.Input input = new LogPipeline.Input("main", 500, false);
+		ArrayList<LogPipeline.Input> inputs = new ArrayList<LogPipeline.Input>();
+		inputs.add(input);
+		pipeline.setInputs(inputs);
+		pipeline.read(input, new ByteArrayInputStream(text.toString().getBytes()));
+
+		// read in well under a second, so only the burst gets through.
+		List<LogEntry> lines = pipeline.mergedSnapshot();
+		int chatty = 0;
+
+		for (int i = 0; i < lines.size(); i++) {
+			if (lines.get(i).tag.equals("Chatty")) {
+				chatty++;
+			}
+		}
+
+		assertTrue(chatty >= 10 && chatty < 20);
+		assertTrue(lines.size() - chatty >= 10 && lines.size() - chatty < 20);
+		int[] suppressed = pipeline.getThrottle().getSuppressedCounts();
+		assertEquals(100 - chatty, suppressed[pipeline.getTags().getId("Chatty", false)]);
+	}
+
+	public void testBytesMatchAcrossModes() throws IOException {
+		InputStream in = getClass().getResourceAsStream("logcat-main.bin");
+		ByteArrayOutputStream capture = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int n;
+
+		while ((n = in.read(buf)) > 0) {
+			capture.write(buf, 0, n);
+		}
+
+		in.close();
+		BinaryLogDecoder decoder = new BinaryLogDecoder(new ByteArrayInputStream(capture.toByteArray()),
+				new TagTable());
+		StringBuilder text = new StringBuilder();
+		int bytes = 0;
+
+		while (decoder.next()) {
+			LogEntry entry = decoder.toEntry();
+			text.append(entry.line).append('\n');
+			bytes += Utf8.length(entry.getMessage());
+		}
+
+		LogPipeline binary = new LogPipeline();
+		binary.read(new LogPipeline.Input("main", 250, true), new ByteArrayInputStream(capture.toByteArray()));
+		LogPipeline plain = new LogPipeline();
+		plain.read(new LogPipeline.Input("main", 250, false),
+				new ByteArrayInputStream(text.toString().getBytes("UTF-8")));
+
+		assertEquals(bytes, binary.getStats(LogStats.SLOTS).bytes);
+		assertEquals(bytes, plain.getStats(LogStats.SLOTS).bytes);
+	}
+
+	public void testRefilterRebuildsView() throws IOException {
+		LogPipeline pipeline = new LogPipeline();
+		final List<List<LogEntry>> told = new ArrayList<List<LogEntry>>();
+		pipeline.openStore(mDir);
+		read(pipeline, "main", lines("Main", 0, 300));
+		assertEquals(300, view(pipeline).size());
+
+		pipeline.setFilter(LogFilter.compile('E', null, null, LogFilter.PID_ALL, null, false, pipeline.getTags()),
+				new LogPipeline.FilterListener() {
+					public void filterChanged(List<LogEntry> matches) {
+						told.add(matches);
+					}
+				});
+
+		assertEquals(1, told.size());
+		assertNull(told.get(0));
+
+		List<LogEntry> lines = view(pipeline);
+		assertEquals(100, lines.size());
+
+		for (int i = 0; i < lines.size(); i++) {
+			assertEquals('E', lines.get(i).level);
+		}
+
+		read(pipeline, "main", lines("Main", 300, 330));
+		assertEquals(110, view(pipeline).size());
+		pipeline.close();
+	}
+
+	public void testRefilterWithoutStore() throws IOException {
+		LogPipeline pipeline = new LogPipeline();
+		final List<List<LogEntry>> told = new ArrayList<List<LogEntry>>();
+		LogPipeline.Input input = new LogPipeline.Input("main", 250, false);
+		ArrayList<LogPipeline.Input> inputs = new ArrayList<LogPipeline.Input>();
+		inputs.add(input);
+		pipeline.setInputs(inputs);
+		pipeline.read(input, new ByteArrayInputStream(lines("Main", 0, 90).getBytes()));
+
+		pipeline.setFilter(LogFilter.compile('E', null, null, LogFilter.PID_ALL, null, false, pipeline.getTags()),
+				new LogPipeline.FilterListener() {
+					public void filterChanged(List<LogEntry> matches) {
+						told.add(matches);
+					}
+				});
+
+		assertEquals(30, told.get(0).size());
+		assertEquals("E/Main(  1): line 87", told.get(0).get(29).line);
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LogRingBufferTest extends TestCase {
+	private static final int WRITES = 5000000;
+	private volatile boolean mDone;
+
+	public void testWrapsAround() {
+		LogRingBuffer<Long> ring = new LogRingBuffer<Long>(4);
+
+		for (long i = 0; i < 10; i++) {
+			ring.add(i);
+		}
+
+		assertEquals(10, ring.head());
+		assertEquals(6, ring.tail());
+		assertEquals(4, ring.size());
+		assertNull(ring.get(5));
+		assertNull(ring.get(10));
+
+		for (long i = 6; i < 10; i++) {
+			assertEquals(Long.valueOf(i), ring.get(i));
+		}
+
+		List<Long> out = new ArrayList<Long>();
+		assertEquals(10, ring.snapshot(8, out));
+		assertEquals(2, out.size());
+		assertEquals(Long.valueOf(8), out.get(0));
+		assertEquals(Long.valueOf(9), out.get(1));
+	}
+
+	public void testClearKeepsCounting() {
+		LogRingBuffer<Long> ring = new LogRingBuffer<Long>(4);
+		ring.add(0L);
+		ring.add(1L);
+		ring.clear();
+
+		assertEquals(0, ring.size());
+		assertNull(ring.get(1));
+		ring.add(2L);
+		assertEquals(2, ring.tail());
+		assertEquals(Long.valueOf(2), ring.get(2));
+	}
+
+	/*
+	 * Readers hammer the oldest element while the producer laps them. Whatever get()
+	 * and snapshot() hand back must be the element that sequence number was given,
+	 * never the one overwriting it.
+	 */
+	public void testOldestSlotWhileOverwritten() throws InterruptedException {
+		final LogRingBuffer<Long> ring = new LogRingBuffer<Long>(1);
+		final String[] failure = new String[1];
+		Thread reader = new Thread() {
+			public void run() {
+				List<Long> out = new ArrayList<Long>();
+
+				while (!mDone && failure[0] == null) {
+					long seq = ring.tail();
+					Long item = ring.get(seq);
+
+					if (item != null && item.longValue() != seq) {
+						failure[0] = "get(" + seq + ") returned " + item;
+					}
+
+					out.clear();
+					long from = ring.tail();
+					long next = ring.snapshot(from, out);
+
+					for (int i = 0; i < out.size(); i++) {
+						long expected = next - out.size() + i;
+
+						if (out.get(i).longValue() != expected) {
+							failure[0] = "snapshot held " + out.get(i) + " for " + expected;
+						}
+					}
+				}
+			}
+		};
+
+		reader.start();
+
+		for (long i = 0; i < WRITES && failure[0] == null; i++) {
+			ring.add(i);
+		}
+
+		mDone = true;
+		reader.join();
+
+		if (failure[0] != null) {
+			fail(failure[0]);
+		}
+	}
+}
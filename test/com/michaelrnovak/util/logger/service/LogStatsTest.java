@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import junit.framework.TestCase;
+
+public class LogStatsTest extends TestCase {
+	private TagTable mTags;
+	private LogStats mStats;
+
+	@Override
+	protected void setUp() {
+		mTags = new TagTable();
+		mStats = new LogStats();
+	}
+
+	private void record(String tag, int pid, int bytes, long now) {
+		mStats.record('I', mTags.getId(tag, true), pid, bytes, now);
+	}
+
+	private static int pidLines(StatsSnapshot stats, int pid) {
+		for (int i = 0; i < stats.pids.length; i++) {
+			if (stats.pids[i] == pid) {
+				return stats.pidLines[i];
+			}
+		}
+
+		return 0;
+	}
+
+	public void testWindows() {
+		record("Old", 1, 10, 1000);
+		record("New", 2, 20, 5000);
+		record("New", 2, 20, 5500);
+
+		StatsSnapshot last = mStats.snapshot(1, 10, 5999, mTags);
+		assertEquals(2, last.lines);
+		assertEquals(40, last.bytes);
+		assertEquals(1, last.tags.length);
+		assertEquals("New", last.tags[0]);
+		assertEquals(2, last.pidLines[0]);
+
+		StatsSnapshot all = mStats.snapshot(LogStats.SLOTS, 10, 5999, mTags);
+		assertEquals(3, all.lines);
+		assertEquals(2, all.tags.length);
+		assertEquals(1, pidLines(all, 1));
+
+		// a minute on, the slots have all gone stale.
+		assertEquals(0, mStats.snapshot(LogStats.SLOTS, 10, 5000 + LogStats.SLOTS * 1000, mTags).lines);
+	}
+
+	public void testPidsPastTheLimit() {
+		for (int pid = 0; pid < LogStats.MAX_PIDS; pid++) {
+			record("Tag", pid, 1, 1000);
+		}
+
+		record("Tag", 5000, 1, 1000);
+		StatsSnapshot stats = mStats.snapshot(1, LogStats.MAX_PIDS + 1, 1000, mTags);
+		assertEquals(LogStats.MAX_PIDS + 1, stats.lines);
+		assertEquals(LogStats.MAX_PIDS, stats.pids.length);
+		assertEquals(0, pidLines(stats, 5000));
+	}
+
+	public void testQuietPidsAreRecycled() {
+		for (int pid = 0; pid < LogStats.MAX_PIDS; pid++) {
+			record("Tag", pid, 1, 1000);
+		}
+
+		// pid 7 keeps logging, everybody else has gone quiet.
+		long later = 1000 + LogStats.SLOTS * 1000;
+		record("Tag", 7, 1, later - 1000);
+		record("Tag", 7, 1, later);
+
+		for (int pid = 5000; pid < 5000 + LogStats.MAX_PIDS - 1; pid++) {
+			record("Tag", pid, 1, later);
+		}
+
+		StatsSnapshot stats = mStats.snapshot(LogStats.SLOTS, 2 * LogStats.MAX_PIDS, later, mTags);
+		assertEquals(LogStats.MAX_PIDS, stats.pids.length);
+		assertEquals(2, pidLines(stats, 7));
+		assertEquals(1, pidLines(stats, 5000));
+		assertEquals(1, pidLines(stats, 5000 + LogStats.MAX_PIDS - 2));
+		assertEquals(0, pidLines(stats, 3));
+
+		// and the table is full of live pids again.
+		record("Tag", 9999, 1, later);
+		assertEquals(0, pidLines(mStats.snapshot(1, 2 * LogStats.MAX_PIDS, later, mTags), 9999));
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class RotatingFileSinkTest extends TestCase {
+	// every line below is exactly 20 bytes with its newline.
+	private static final int LINE_BYTES = 20;
+	private File mDir;
+	private File mFile;
+	private LogParser mParser = new LogParser(new TagTable());
+
+	@Override
+	protected void setUp() throws IOException {
+		mDir = File.createTempFile("sink", "");
+		mDir.delete();
+		mFile = new File(mDir, "logger.log");
+	}
+
+	@Override
+	protected void tearDown() {
+		File[] files = mDir.listFiles();
+
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+
+		mDir.delete();
+	}
+
+	private static String line(int i) {
+		String n = String.valueOf(1000 + i);
+		return "I/Tag(  1): nn " + n;
+	}
+
+	private void write(RotatingFileSink sink, int from, int to) {
+		for (int i = from; i < to; i++) {
+			sink.publish(mParser.parse(line(i), 0));
+		}
+
+		// the worker on this thread, done once it has written out what's queued.
+		sink.close();
+		sink.run();
+	}
+
+	private static String read(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		byte[] b = new byte[(int) file.length()];
+		int n = 0;
+
+		try {
+			while (n < b.length) {
+				n += in.read(b, n, b.length - n);
+			}
+		} finally {
+			in.close();
+		}
+
+		return new String(b, "UTF-8");
+	}
+
+	private static String lines(int from, int to) {
+		StringBuilder text = new StringBuilder();
+
+		for (int i = from; i < to; i++) {
+			text.append(line(i)).append('\n');
+		}
+
+		return text.toString();
+	}
+
+	public void testRotatesAtLimit() throws IOException {
+		assertEquals(LINE_BYTES, line(0).length() + 1);
+
+		// a run this short is a single write, and the limit fits two of them.
+		for (int i = 0; i < 7; i++) {
+			write(new RotatingFileSink(mFile, 2 * 64 * LINE_BYTES, 3), 64 * i, 64 * (i + 1));
+		}
+
+		File one = new File(mFile.getPath() + ".1");
+		File two = new File(mFile.getPath() + ".2");
+		assertFalse(new File(mFile.getPath() + ".3").exists());
+		assertEquals(lines(64 * 6, 64 * 7), read(mFile));
+		assertEquals(lines(64 * 4, 64 * 6), read(one));
+		assertEquals(lines(64 * 2, 64 * 4), read(two));
+	}
+
+	public void testAppendsAcrossRestarts() throws IOException {
+		write(new RotatingFileSink(mFile, 1024 * 1024, 3), 0, 10);
+		write(new RotatingFileSink(mFile, 1024 * 1024, 3), 10, 20);
+
+		assertEquals(lines(0, 20), read(mFile));
+		assertFalse(new File(mFile.getPath() + ".1").exists());
+	}
+}
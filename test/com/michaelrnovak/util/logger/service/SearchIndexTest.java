@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import junit.framework.TestCase;
+
+public class SearchIndexTest extends TestCase {
+	private LogParser mParser = new LogParser(new TagTable(), false);
+	private SearchIndex mIndex;
+
+	@Override
+	protected void setUp() {
+		mIndex = new SearchIndex(100);
+		add(100, "I/ActivityManager(  52): Starting activity: Intent");
+		add(101, "W/dalvikvm(  311): GC freed 1234 objects");
+		add(102, "I/ActivityManager(  52): Displayed activity com.example/.Main");
+		add(103, "E/AndroidRuntime(  311): FATAL EXCEPTION: main");
+	}
+
+	private void add(long seq, String line) {
+		mIndex.add(seq, mParser.parse(line, 0));
+	}
+
+	private static void assertSeqs(long[] expected, long[] actual) {
+		assertNotNull(actual);
+		assertEquals(expected.length, actual.length);
+
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i]);
+		}
+	}
+
+	public void testWholeToken() {
+		assertSeqs(new long[] { 100, 102 }, mIndex.candidates("activitymanager"));
+		assertSeqs(new long[] { 103 }, mIndex.candidates("FATAL"));
+	}
+
+	public void testSubstringOfToken() {
+		assertSeqs(new long[] { 100, 102 }, mIndex.candidates("ctivity"));
+		assertSeqs(new long[] { 101 }, mIndex.candidates("freed"));
+	}
+
+	public void testRunsAreIntersected() {
+		assertSeqs(new long[] { 102 }, mIndex.candidates("displayed activity"));
+		assertSeqs(new long[0], mIndex.candidates("fatal activity"));
+	}
+
+	public void testNothingToLookUp() {
+		assertNull(mIndex.candidates("1234"));
+		assertNull(mIndex.candidates("a"));
+	}
+
+	public void testEvict() {
+		mIndex.evict(102);
+		assertEquals(102, mIndex.first());
+		assertSeqs(new long[] { 102 }, mIndex.candidates("activity"));
+		assertSeqs(new long[0], mIndex.candidates("dalvikvm"));
+	}
+
+	public void testManyPostings() {
+		SearchIndex index = new SearchIndex(0);
+
+		for (int i = 0; i < 1000; i++) {
+			index.add(i, mParser.parse(i % 2 == 0 ? "I/Even(  1): tick" : "I/Odd(  1): tock", 0));
+		}
+
+		index.evict(500);
+		long[] seqs = index.candidates("even");
+		assertEquals(250, seqs.length);
+		assertEquals(500, seqs[0]);
+		assertEquals(998, seqs[249]);
+	}
+}
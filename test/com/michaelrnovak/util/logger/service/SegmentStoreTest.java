@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SegmentStoreTest extends TestCase {
+	private static final int SEGMENT_SIZE = 4096;
+	private File mDir;
+	private LogParser mParser;
+
+	@Override
+	protected void setUp() throws IOException {
+		mDir = File.createTempFile("store", "");
+		mDir.delete();
+		mParser = new LogParser(new TagTable(), false);
+	}
+
+	@Override
+	protected void tearDown() {
+		File[] files = mDir.listFiles();
+
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+
+		mDir.delete();
+	}
+
+	private SegmentStore open(int maxSegments) throws IOException {
+		return new SegmentStore(mDir, SEGMENT_SIZE, maxSegments, mParser);
+	}
+
+	private long append(SegmentStore store, String line, long time) throws IOException {
+		return store.append(mParser.parse(line, time));
+	}
+
+	private List<LogEntry> readAll(SegmentStore store) {
+		List<LogEntry> out = new ArrayList<LogEntry>();
+		store.read(store.firstSeq(), Integer.MAX_VALUE, out);
+		return out;
+	}
+
+	public void testAppendAndRead() throws IOException {
+		SegmentStore store = open(4);
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, append(store, "I/Tag(  1): line " + i, 1000 + i));
+		}
+
+		List<LogEntry> lines = readAll(store);
+		assertEquals(10, lines.size());
+		assertEquals("I/Tag(  1): line 3", lines.get(3).line);
+		assertEquals("Tag", lines.get(3).tag);
+		assertEquals(3, lines.get(3).seq);
+		assertEquals(1003, lines.get(3).time);
+	}
+
+	public void testRecoversAfterReopen() throws IOException {
+		SegmentStore store = open(4);
+
+		for (int i = 0; i < 200; i++) {
+			append(store, "I/Tag(  1): line " + i, 1000 + i);
+		}
+
+		long first = store.firstSeq();
+		store.close();
+
+		store = open(4);
+		assertEquals(first, store.firstSeq());
+		assertEquals(200, store.nextSeq());
+		assertEquals(200, append(store, "I/Tag(  1): after", 5000));
+
+		List<LogEntry> lines = readAll(store);
+		assertEquals("I/Tag(  1): line 199", lines.get(lines.size() - 2).line);
+		assertEquals("I/Tag(  1): after", lines.get(lines.size() - 1).line);
+	}
+
+	public void testOldSegmentsAreDropped() throws IOException {
+		SegmentStore store = open(2);
+
+		for (int i = 0; i < 1000; i++) {
+			append(store, "I/Tag(  1): line " + i, 1000 + i);
+		}
+
+		assertEquals(2, mDir.list().length);
+		assertTrue(store.firstSeq() > 0);
+		assertEquals(store.nextSeq() - store.firstSeq(), readAll(store).size());
+	}
+
+	public void testOversizeLineIsCut() throws IOException {
+		SegmentStore store = open(4);
+		StringBuilder line = new StringBuilder("I/Tag(  1): ");
+
+		for (int i = 0; i < SEGMENT_SIZE; i++) {
+			line.append('\u00e9');
+		}
+
+		LogEntry entry = mParser.parse(line.toString(), 1000);
+		store.append(entry);
+		append(store, "I/Tag(  1): next", 1001);
+
+		List<LogEntry> lines = readAll(store);
+		assertEquals(2, lines.size());
+		assertTrue(lines.get(0).line.length() < entry.line.length());
+		assertTrue(entry.line.startsWith(lines.get(0).line));
+		assertEquals("I/Tag(  1): next", lines.get(1).line);
+	}
+
+	public void testSeekGoesByReceivedTime() throws IOException {
+		SegmentStore store = open(4);
+
+		for (int i = 0; i < 300; i++) {
+			// record times all over the place, as binary mode gives them.
+			LogEntry entry = mParser.parse("I/Tag(  1): line " + i, (i * 7919) % 1000);
+			entry.received = 1000 + i;
+			store.append(entry);
+		}
+
+		LogEntry back = mParser.parse("I/Tag(  1): clock set back", 0);
+		back.received = 500;
+		store.append(back);
+		assertEquals(1299, back.received);
+
+		assertEquals(150, store.seek(1150));
+		assertEquals(store.firstSeq(), store.seek(0));
+		assertEquals(store.nextSeq(), store.seek(2000));
+	}
+}
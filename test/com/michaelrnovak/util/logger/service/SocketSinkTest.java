@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+
+public class SocketSinkTest extends TestCase {
+	private static final long WAIT_MS = 5000;
+	private LogParser mParser = new LogParser(new TagTable());
+	private LoopbackTransport mTransport;
+	private SocketSink mSink;
+
+	/*
+	 * Stands in for the device's local socket with a TCP one on the loopback address.
+	 */
+	private static class LoopbackTransport implements SocketSink.Transport {
+		private ServerSocket mServer;
+
+		public void open() throws IOException {
+			mServer = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		}
+
+		public OutputStream accept() throws IOException {
+			return mServer.accept().getOutputStream();
+		}
+
+		public void close() {
+			try {
+				mServer.close();
+			} catch (IOException e) {
+				// nothing left to do.
+			}
+		}
+
+		Socket connect() throws IOException {
+			Socket client = new Socket(mServer.getInetAddress(), mServer.getLocalPort());
+			client.setSoTimeout((int) WAIT_MS);
+			return client;
+		}
+	}
+
+	@Override
+	protected void setUp() throws InterruptedException {
+		mTransport = new LoopbackTransport();
+		mSink = new SocketSink("test", mTransport);
+		mSink.start();
+
+		// open() runs on the worker thread.
+		for (long end = System.currentTimeMillis() + WAIT_MS; mTransport.mServer == null;) {
+			assertTrue(System.currentTimeMillis() < end);
+			Thread.sleep(10);
+		}
+	}
+
+	@Override
+	protected void tearDown() {
+		mSink.close();
+	}
+
+	/*
+	 * Connects the first client and waits for the sink to take it on.
+	 */
+	private Socket connect() throws IOException, InterruptedException {
+		Socket client = mTransport.connect();
+
+		for (long end = System.currentTimeMillis() + WAIT_MS; !mSink.hasClient();) {
+			assertTrue(System.currentTimeMillis() < end);
+			Thread.sleep(10);
+		}
+
+		return client;
+	}
+
+	private static BufferedReader reader(Socket client) throws IOException {
+		return new BufferedReader(new InputStreamReader(client.getInputStream(), "UTF-8"));
+	}
+
+	private void publish(String line) {
+		mSink.publish(mParser.parse(line, 0));
+	}
+
+	public void testStreamsLinesToClient() throws Exception {
+		publish("I/Tag(  1): before anyone listens");
+		Socket client = connect();
+		BufferedReader in = reader(client);
+
+		for (int i = 0; i < 100; i++) {
+			publish("I/Tag(  1): line " + i);
+		}
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals("I/Tag(  1): line " + i, in.readLine());
+		}
+
+		client.close();
+	}
+
+	public void testNewClientReplacesOld() throws Exception {
+		Socket first = connect();
+		BufferedReader firstIn = reader(first);
+		Socket second = mTransport.connect();
+
+		// the old client is hung up on once the new one is taken on.
+		assertNull(firstIn.readLine());
+		assertTrue(mSink.hasClient());
+		publish("I/Tag(  1): for the second");
+		assertEquals("I/Tag(  1): for the second", reader(second).readLine());
+
+		first.close();
+		second.close();
+	}
+
+	public void testCloseHangsUp() throws Exception {
+		Socket client = connect();
+		BufferedReader in = reader(client);
+		publish("I/Tag(  1): last");
+		assertEquals("I/Tag(  1): last", in.readLine());
+
+		mSink.close();
+		assertNull(in.readLine());
+		client.close();
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2010  Michael Novak <mike@androidnerds.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.michaelrnovak.util.logger.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class StreamSinkTest extends TestCase {
+	private LogParser mParser = new LogParser(new TagTable());
+
+	private static class MemorySink extends StreamSink {
+		final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+		int mWrites = 0;
+		boolean mOpened = false;
+		boolean mReleased = false;
+
+		MemorySink(int capacity, int policy) {
+			super("memory", capacity, policy);
+		}
+
+		@Override
+		protected void open() {
+			mOpened = true;
+		}
+
+		@Override
+		protected void write(byte[] b, int off, int len) {
+			mOut.write(b, off, len);
+			mWrites++;
+		}
+
+		@Override
+		protected void release() {
+			mReleased = true;
+		}
+
+		String text() throws IOException {
+			return new String(mOut.toByteArray(), "UTF-8");
+		}
+	}
+
+	private void publish(StreamSink sink, int from, int to) {
+		for (int i = from; i < to; i++) {
+			sink.publish(mParser.parse("I/Tag(  1): line " + i, 0));
+		}
+	}
+
+	private static String lines(int from, int to) {
+		StringBuilder text = new StringBuilder();
+
+		for (int i = from; i < to; i++) {
+			text.append("I/Tag(  1): line ").append(i).append('\n');
+		}
+
+		return text.toString();
+	}
+
+	/*
+	 * Runs the worker on the test thread: with the sink closed it writes out what's
+	 * queued and returns.
+	 */
+	private static void drain(StreamSink sink) {
+		sink.close();
+		sink.run();
+	}
+
+	public void testLinesInOrder() throws IOException {
+		MemorySink sink = new MemorySink(1000, StreamSink.DROP_NEWEST);
+		publish(sink, 0, 1000);
+		drain(sink);
+
+		assertTrue(sink.mOpened);
+		assertTrue(sink.mReleased);
+		assertEquals(lines(0, 1000), sink.text());
+		assertEquals(0, sink.getDropped());
+		// batched into whole buffers, not a write a line.
+		assertTrue(sink.mWrites < 10);
+	}
+
+	public void testUtf8() throws IOException {
+		MemorySink sink = new MemorySink(10, StreamSink.DROP_NEWEST);
+		sink.publish(mParser.parse("I/Tag(  1): caf\u00e9 \u65e5\u672c", 0));
+		drain(sink);
+
+		assertEquals("I/Tag(  1): caf\u00e9 \u65e5\u672c\n", sink.text());
+	}
+
+	public void testDropNewest() throws IOException {
+		MemorySink sink = new MemorySink(100, StreamSink.DROP_NEWEST);
+		publish(sink, 0, 150);
+		drain(sink);
+
+		assertEquals(50, sink.getDropped());
+		assertEquals("--- 50 lines dropped ---\n" + lines(0, 100), sink.text());
+	}
+
+	public void testDropOldest() throws IOException {
+		MemorySink sink = new MemorySink(100, StreamSink.DROP_OLDEST);
+		publish(sink, 0, 150);
+		drain(sink);
+
+		assertEquals(50, sink.getDropped());
+		assertEquals("--- 50 lines dropped ---\n" + lines(50, 150), sink.text());
+	}
+
+	public void testLineLongerThanBuffer() throws IOException {
+		StringBuilder big = new StringBuilder("I/Big(  1): ");
+
+		while (big.length() <= StreamSink.BUFFER_SIZE) {
+			big.append("0123456789");
+		}
+
+		MemorySink sink = new MemorySink(10, StreamSink.DROP_NEWEST);
+		publish(sink, 0, 1);
+		sink.publish(mParser.parse(big.toString(), 0));
+		publish(sink, 1, 2);
+		drain(sink);
+
+		assertEquals(lines(0, 1) + big + "\n" + lines(1, 2), sink.text());
+	}
+
+	public void testNothingAfterClose() throws IOException {
+		MemorySink sink = new MemorySink(10, StreamSink.DROP_NEWEST);
+		publish(sink, 0, 2);
+		drain(sink);
+		publish(sink, 2, 4);
+
+		assertEquals(lines(0, 2), sink.text());
+		assertEquals(0, sink.getDropped());
+	}
+}